@@ -0,0 +1,49 @@
+package fractal.bench;
+
+import fractal.Fractal;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Escape-time against orbit-trap iteration, with the primitive and the
+ * Complex updater, at several depths. Each invocation draws a whole
+ * 200x200 image centred on the Mandelbrot set.
+ * @author Shubham
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KernelBench {
+
+    @Param({"100", "1000"})
+    public int depth;
+
+    @Param({"primitive", "complex"})
+    public String updater;
+
+    private Fractal escape, trap;
+
+    @Setup
+    public void setup() {
+        escape = builder().build();
+        trap = builder().trap(z -> Math.abs(z.abs() - 1.0)).build();
+    }
+
+    private Fractal.Builder builder() {
+        Fractal.Builder b = new Fractal.Builder().width(100).depth(depth).scale(2.0f);
+        return updater.equals("complex") ? b.update((c, o) -> c.multiply(c).add(o)) : b;
+    }
+
+    @Benchmark
+    public void iterateOn() {
+        escape.drawFractal();
+    }
+
+    @Benchmark
+    public void getDistance() {
+        trap.drawFractal();
+    }
+}
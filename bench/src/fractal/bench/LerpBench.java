@@ -0,0 +1,27 @@
+package fractal.bench;
+
+import fractal.Lerp;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Colour blending with Lerp.lerp on "r g b" strings.
+ * @author Shubham
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LerpBench {
+
+    private final String from = "12 200 64", to = "255 0 128";
+    private double frac = 0.0;
+
+    @Benchmark
+    public String lerpString() {
+        frac = frac >= 1.0 ? 0.0 : frac + 0.01;
+        return Lerp.lerp(frac, from, to);
+    }
+}
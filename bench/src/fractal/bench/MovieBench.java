@@ -0,0 +1,46 @@
+package fractal.bench;
+
+import fractal.ImageSinks;
+import fractal.Lerp;
+import fractal.Movie;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * End to end cost of Movie.drawFrame: building the Fractal, rendering,
+ * painting and writing the frame to ./frames.
+ * @author Shubham
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MovieBench {
+
+    @Param({"ppm", "png"})
+    public String format;
+
+    private Movie movie;
+    private int frame;
+
+    @Setup
+    public void setup() {
+        new File("frames").mkdirs();
+        movie = new Movie.Builder()
+                .nFrames(30)
+                .width(250)
+                .depth(100)
+                .scale((f, n) -> Lerp.lerp(f, n, 2.5f, 0.5f))
+                .sink(format.equals("ppm") ? ImageSinks.ppm() : ImageSinks.png())
+                .build();
+    }
+
+    @Benchmark
+    public void drawFrame() {
+        movie.drawFrame(frame);
+        frame = (frame + 1) % 30;
+    }
+}
@@ -0,0 +1,82 @@
+package fractal.bench;
+
+import fractal.Painters;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.math3.complex.Complex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Every Painters method, in both its primitive and String form, over a fixed
+ * spread of shading values and final values.
+ * @author Shubham
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PainterBench {
+
+    private static final int N = 1024;
+
+    private final float[] v = new float[N];
+    private final double[] re = new double[N], im = new double[N];
+    private final Complex[] c = new Complex[N];
+    private int i;
+
+    @Setup
+    public void setup() {
+        Random prng = new Random(42);
+        for (int k = 0; k < N; k++) {
+            v[k] = prng.nextFloat();
+            re[k] = prng.nextGaussian();
+            im[k] = prng.nextGaussian();
+            c[k] = new Complex(re[k], im[k]);
+        }
+    }
+
+    private int next() {
+        return i = (i + 1) & (N - 1);
+    }
+
+    @Benchmark
+    public int blackWhite() {
+        int k = next();
+        return Painters.blackWhitePaint(v[k], re[k], im[k]);
+    }
+
+    @Benchmark
+    public int whiteBlack() {
+        int k = next();
+        return Painters.whiteBlackPaint(v[k], re[k], im[k]);
+    }
+
+    @Benchmark
+    public int blueWhite() {
+        int k = next();
+        return Painters.blueWhitePaint(v[k], re[k], im[k]);
+    }
+
+    @Benchmark
+    public int random() {
+        int k = next();
+        return Painters.randomPaint(v[k], re[k], im[k]);
+    }
+
+    @Benchmark
+    public int newton() {
+        int k = next();
+        return Painters.newtonPaint(v[k], re[k], im[k]);
+    }
+
+    @Benchmark
+    public void strings(Blackhole bh) {
+        int k = next();
+        bh.consume(Painters.blackWhitePaint(v[k], c[k]));
+        bh.consume(Painters.randomPaint(v[k], c[k]));
+        bh.consume(Painters.newtonPaint(v[k], c[k]));
+    }
+}
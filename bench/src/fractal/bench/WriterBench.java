@@ -0,0 +1,63 @@
+package fractal.bench;
+
+import fractal.Fractal;
+import fractal.Framebuffer;
+import fractal.ImageSink;
+import fractal.ImageSinks;
+import fractal.Painters;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Encoding throughput of each ImageSink for a 1000x1000 render, written to a
+ * channel that discards everything so the disk is not measured.
+ * @author Shubham
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WriterBench {
+
+    @Param({"ppm", "png", "raw"})
+    public String format;
+
+    private ImageSink sink;
+    private Framebuffer fb;
+    private final WritableByteChannel discard = new WritableByteChannel() {
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Setup
+    public void setup() {
+        sink = format.equals("ppm") ? ImageSinks.ppm()
+                : format.equals("png") ? ImageSinks.png() : ImageSinks.raw();
+        Fractal f = new Fractal.Builder().width(500).depth(100)
+                .rgbPaint(Painters::newtonPaint).build();
+        f.drawFractal();
+        fb = f.getOutput();
+    }
+
+    @Benchmark
+    public void write() throws Exception {
+        sink.write(fb, discard);
+    }
+}
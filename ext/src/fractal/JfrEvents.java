@@ -0,0 +1,143 @@
+package fractal;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * RenderEvents committed to Flight Recorder. Needs JDK 11 or later. Events
+ * are only built when JFR records them, and their durations come from
+ * begin() and end().
+ * @author Shubham
+ */
+final class JfrEvents extends RenderEvents {
+
+    @Name("fractal.Draw")
+    @Label("Fractal Draw")
+    @Category("JFractal")
+    static final class Draw extends Event {
+        @Label("Width")
+        int width;
+        @Label("Depth")
+        int depth;
+    }
+
+    @Name("fractal.Tile")
+    @Label("Fractal Tile")
+    @Category("JFractal")
+    static final class Tile extends Event {
+        @Label("x0")
+        int x0;
+        @Label("x1")
+        int x1;
+        @Label("y0")
+        int y0;
+        @Label("y1")
+        int y1;
+        @Label("Iterations")
+        long iterations;
+    }
+
+    @Name("fractal.Write")
+    @Label("Fractal Write")
+    @Category("JFractal")
+    static final class Write extends Event {
+        @Label("Name")
+        String name;
+        @Label("Size")
+        @DataAmount
+        long size;
+    }
+
+    @Name("fractal.Frame")
+    @Label("Movie Frame")
+    @Category("JFractal")
+    static final class Frame extends Event {
+        @Label("Frame")
+        int frame;
+    }
+
+    private static Event begin(Event e) {
+        if (!e.isEnabled()) {
+            return null;
+        }
+        e.begin();
+        return e;
+    }
+
+    /**
+     * Ends e; false when it is under the recording's threshold.
+     */
+    private static boolean end(Object e) {
+        if (e == null) {
+            return false;
+        }
+        Event ev = (Event) e;
+        ev.end();
+        return ev.shouldCommit();
+    }
+
+    @Override
+    Object beginDraw() {
+        return begin(new Draw());
+    }
+
+    @Override
+    void endDraw(Object e, int width, int depth) {
+        if (end(e)) {
+            Draw d = (Draw) e;
+            d.width = width;
+            d.depth = depth;
+            d.commit();
+        }
+    }
+
+    @Override
+    Object beginTile() {
+        return begin(new Tile());
+    }
+
+    @Override
+    void endTile(Object e, int x0, int x1, int y0, int y1, long iterations) {
+        if (end(e)) {
+            Tile t = (Tile) e;
+            t.x0 = x0;
+            t.x1 = x1;
+            t.y0 = y0;
+            t.y1 = y1;
+            t.iterations = iterations;
+            t.commit();
+        }
+    }
+
+    @Override
+    Object beginWrite() {
+        return begin(new Write());
+    }
+
+    @Override
+    void endWrite(Object e, String name, long size) {
+        if (end(e)) {
+            Write w = (Write) e;
+            w.name = name;
+            w.size = size;
+            w.commit();
+        }
+    }
+
+    @Override
+    Object beginFrame() {
+        return begin(new Frame());
+    }
+
+    @Override
+    void endFrame(Object e, int frame_no) {
+        if (end(e)) {
+            Frame f = (Frame) e;
+            f.frame = frame_no;
+            f.commit();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package fractal;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * LaneKernel on the incubating Vector API: each vector holds as many lanes
+ * as the CPU's widest double registers, so a run of LANES pixels takes one
+ * to four instructions per operation. Escaped lanes are masked off and
+ * parked at zero as in the scalar kernel. Every operation is the scalar one
+ * in the same order, with no fused multiply-adds, so the results are bit for
+ * bit the same.
+ * <p>
+ * Needs JDK 17 or later, and --add-modules jdk.incubator.vector at run time;
+ * LaneKernel.create falls back to the scalar kernel otherwise.
+ * @author Shubham
+ */
+final class VectorLaneKernel extends LaneKernel {
+
+    private static final VectorSpecies<Double> S
+            = DoubleVector.SPECIES_PREFERRED.length() <= LANES
+            ? DoubleVector.SPECIES_PREFERRED : DoubleVector.SPECIES_512;
+
+    private static final int MAX_BITS = 4; //Higher degrees are left to the scalar lanes
+
+    private final double[] tr = new double[LANES], ti = new double[LANES];
+
+    @Override
+    void escape(int degree, int count, int depth, double lim2) {
+        if (degree >> MAX_BITS != 0) {
+            super.escape(degree, count, depth, lim2);
+            return;
+        }
+        for (int off = 0; off < count; off += S.length()) {
+            if (degree == 2) {
+                quadratic(off, count, depth, lim2);
+            } else {
+                power(off, count, degree, depth, lim2);
+            }
+        }
+    }
+
+    /**
+     * Gives the lanes of one vector, from off up to count, that start
+     * outside the bailout a count of 0.
+     *
+     * @return The lanes that start inside it
+     */
+    private VectorMask<Double> start(int off, int count, double lim2) {
+        DoubleVector r = DoubleVector.fromArray(S, zr, off);
+        DoubleVector i = DoubleVector.fromArray(S, zi, off);
+        VectorMask<Double> live = S.indexInRange(off, count)
+                .and(r.mul(r).add(i.mul(i)).compare(VectorOperators.LT, lim2));
+        for (int l = 0; l < S.length() && off + l < count; l++) {
+            if (!live.laneIsSet(l)) {
+                n[off + l] = 0;
+            }
+        }
+        return live;
+    }
+
+    /**
+     * Z^2 + C for the lanes of one vector. Vectors are only ever held in
+     * locals so that none of them is boxed.
+     */
+    private void quadratic(int off, int count, int depth, double lim2) {
+        VectorMask<Double> live = start(off, count, lim2);
+        DoubleVector zero = DoubleVector.zero(S);
+        DoubleVector two = DoubleVector.broadcast(S, 2.0), lim = DoubleVector.broadcast(S, lim2);
+        DoubleVector r = zero.blend(DoubleVector.fromArray(S, zr, off), live);
+        DoubleVector i = zero.blend(DoubleVector.fromArray(S, zi, off), live);
+        DoubleVector a = zero.blend(DoubleVector.fromArray(S, cr, off), live);
+        DoubleVector b = zero.blend(DoubleVector.fromArray(S, ci, off), live);
+        int it = 1;
+        for (; it < depth && live.anyTrue(); it++) {
+            DoubleVector x = r, y = i;
+            r = x.mul(x).sub(y.mul(y)).add(a);
+            i = x.mul(two).mul(y).add(b);
+            VectorMask<Double> out = live.andNot(
+                    r.mul(r).add(i.mul(i)).compare(VectorOperators.LT, lim));
+            if (out.anyTrue()) {
+                r.intoArray(tr, 0);
+                i.intoArray(ti, 0);
+                store(out.toLong(), it, off);
+                live = live.andNot(out);
+                r = zero.blend(r, live);
+                i = zero.blend(i, live);
+                a = zero.blend(a, live);
+                b = zero.blend(b, live);
+            }
+        }
+        if (live.anyTrue()) {
+            //Reached depth
+            r.intoArray(tr, 0);
+            i.intoArray(ti, 0);
+            store(live.toLong(), it, off);
+        }
+    }
+
+    /**
+     * Z^degree + C for the lanes of one vector, by the same repeated
+     * squaring as LaneKernel.power.
+     */
+    private void power(int off, int count, int degree, int depth, double lim2) {
+        VectorMask<Double> live = start(off, count, lim2);
+        DoubleVector zero = DoubleVector.zero(S), one = DoubleVector.broadcast(S, 1.0);
+        DoubleVector two = DoubleVector.broadcast(S, 2.0), lim = DoubleVector.broadcast(S, lim2);
+        DoubleVector r = zero.blend(DoubleVector.fromArray(S, zr, off), live);
+        DoubleVector i = zero.blend(DoubleVector.fromArray(S, zi, off), live);
+        DoubleVector a = zero.blend(DoubleVector.fromArray(S, cr, off), live);
+        DoubleVector b = zero.blend(DoubleVector.fromArray(S, ci, off), live);
+        int it = 1;
+        for (; it < depth && live.anyTrue(); it++) {
+            //Written out bit by bit for the bits of degree; a loop over
+            //them would box the vectors
+            DoubleVector br = r, bi = i, rr = one, ri = zero, t;
+            if ((degree & 1) != 0) {
+                t = rr.mul(br).sub(ri.mul(bi));
+                ri = rr.mul(bi).add(ri.mul(br));
+                rr = t;
+            }
+            if (degree >> 1 != 0) {
+                t = br.mul(br).sub(bi.mul(bi));
+                bi = br.mul(two).mul(bi);
+                br = t;
+                if ((degree >> 1 & 1) != 0) {
+                    t = rr.mul(br).sub(ri.mul(bi));
+                    ri = rr.mul(bi).add(ri.mul(br));
+                    rr = t;
+                }
+            }
+            if (degree >> 2 != 0) {
+                t = br.mul(br).sub(bi.mul(bi));
+                bi = br.mul(two).mul(bi);
+                br = t;
+                if ((degree >> 2 & 1) != 0) {
+                    t = rr.mul(br).sub(ri.mul(bi));
+                    ri = rr.mul(bi).add(ri.mul(br));
+                    rr = t;
+                }
+            }
+            if (degree >> 3 != 0) {
+                t = br.mul(br).sub(bi.mul(bi));
+                bi = br.mul(two).mul(bi);
+                br = t;
+                if ((degree >> 3 & 1) != 0) {
+                    t = rr.mul(br).sub(ri.mul(bi));
+                    ri = rr.mul(bi).add(ri.mul(br));
+                    rr = t;
+                }
+            }
+            r = rr.add(a);
+            i = ri.add(b);
+            VectorMask<Double> out = live.andNot(
+                    r.mul(r).add(i.mul(i)).compare(VectorOperators.LT, lim));
+            if (out.anyTrue()) {
+                r.intoArray(tr, 0);
+                i.intoArray(ti, 0);
+                store(out.toLong(), it, off);
+                live = live.andNot(out);
+                r = zero.blend(r, live);
+                i = zero.blend(i, live);
+                a = zero.blend(a, live);
+                b = zero.blend(b, live);
+            }
+        }
+        if (live.anyTrue()) {
+            r.intoArray(tr, 0);
+            i.intoArray(ti, 0);
+            store(live.toLong(), it, off);
+        }
+    }
+
+    /**
+     * Writes count it and the final Z, from tr and ti, for the lanes set in
+     * mask.
+     */
+    private void store(long mask, int it, int off) {
+        for (int l = 0; l < S.length(); l++) {
+            if ((mask & (1L << l)) != 0) {
+                n[off + l] = it;
+                zr[off + l] = tr[l];
+                zi[off + l] = ti[l];
+            }
+        }
+    }
+}
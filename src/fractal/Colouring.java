@@ -0,0 +1,25 @@
+package fractal;
+
+/**
+ * How Fractal turns iteration counts into the value handed to the painter.
+ * @author Shubham
+ */
+public enum Colouring {
+    /**
+     * The iteration count over the depth, painted as each pixel is iterated.
+     */
+    LINEAR,
+    /**
+     * The normalised fractional iteration count over the depth, which
+     * removes the bands between counts. Escape-time renders only; others
+     * fall back to the count.
+     */
+    SMOOTH,
+    /**
+     * Histogram equalisation: the fraction of escaped pixels that escaped
+     * sooner, interpolated by the fractional count. Spreads the palette
+     * evenly over the image whatever the depth. Pixels that never escaped
+     * get 1.
+     */
+    HISTOGRAM
+}
@@ -0,0 +1,141 @@
+package fractal;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Perturbation-theory renderer for deep zooms into the Mandelbrot set.
+ * One reference orbit is iterated at the centre of the view with BigDecimal
+ * arithmetic. Every pixel then only iterates its difference from that orbit,
+ * d' = 2Zd + d^2 + dc, in ordinary doubles, so magnifications far beyond what
+ * a double can resolve cost about as much per pixel as a normal render.
+ * <p>
+ * When a pixel's value Z + d gets smaller than its difference d (or
+ * Pauldelbrot's criterion flags a glitch, or the reference orbit runs out)
+ * the pixel is rebased onto the start of the reference orbit by setting
+ * d = Z + d. This removes the glitches the reference would otherwise cause.
+ * <p>
+ * Differences are kept in doubles, so views narrower than about 1e-290 are
+ * out of reach.
+ * @author Shubham
+ */
+public final class DeepZoom {
+
+    private static final double GLITCH = 1e-6; //Pauldelbrot's tolerance, squared
+
+    private final BigDecimal re, im;
+    private final double scale;
+
+    /**
+     * @param re Real part of the centre of the view
+     * @param im Imaginary part of the centre of the view
+     * @param scale Half the width of the view, as for Fractal
+     */
+    public DeepZoom(BigDecimal re, BigDecimal im, double scale) {
+        this.re = re;
+        this.im = im;
+        this.scale = scale;
+    }
+
+    public double scale() {
+        return scale;
+    }
+
+    /**
+     * Iterates the reference orbit at the centre.
+     * @param width Half the image width in pixels, for choosing the precision
+     * @param depth Maximum number of iterations
+     * @param inf_lim Bailout value
+     * @return The reference orbit
+     */
+    Orbit orbit(int width, int depth, double inf_lim) {
+        int digits = 17 + Math.max(0, (int) Math.ceil(-Math.log10(scale / width)));
+        MathContext mc = new MathContext(digits);
+        BigDecimal lim2 = new BigDecimal(inf_lim).pow(2, mc);
+        double[] zr = new double[depth + 2];
+        double[] zi = new double[depth + 2];
+        BigDecimal r = BigDecimal.ZERO, i = BigDecimal.ZERO;
+        int m = 0;
+        while (m <= depth) {
+            BigDecimal r2 = r.multiply(r, mc), i2 = i.multiply(i, mc);
+            if (r2.add(i2, mc).compareTo(lim2) > 0) {
+                break;
+            }
+            BigDecimal ri = r.multiply(i, mc);
+            r = r2.subtract(i2, mc).add(re, mc);
+            i = ri.add(ri, mc).add(im, mc);
+            m++;
+            zr[m] = r.doubleValue();
+            zi[m] = i.doubleValue();
+        }
+        return new Orbit(zr, zi, m);
+    }
+
+    /**
+     * A reference orbit Z_0 = 0, Z_(m+1) = Z_m^2 + C at the centre.
+     */
+    static final class Orbit {
+
+        private final double[] zr, zi;
+        private final int last;
+        private final LongAdder rebases = new LongAdder();
+        private final LongAdder glitches = new LongAdder();
+
+        Orbit(double[] zr, double[] zi, int last) {
+            this.zr = zr;
+            this.zi = zi;
+            this.last = last;
+        }
+
+        /**
+         * Escape-time iteration of the point at an offset from the centre.
+         * Counts iterations the same way as Fractal's escape-time loop.
+         *
+         * @param dcr Real offset from the centre
+         * @param dci Imaginary offset from the centre
+         * @param z receives the final value of Z as {re, im}
+         * @return the number of iterations before bailout
+         */
+        int iterate(double dcr, double dci, int depth, double lim2, double[] z) {
+            double dr = 0, di = 0;
+            int m = 0, n = 0;
+            while (true) {
+                double rr = zr[m], ri = zi[m];
+                double t = 2.0 * (rr * dr - ri * di) + dr * dr - di * di + dcr;
+                di = 2.0 * (rr * di + ri * dr) + 2.0 * dr * di + dci;
+                dr = t;
+                m++;
+                double wr = zr[m] + dr, wi = zi[m] + di;
+                double mag2 = wr * wr + wi * wi;
+                z[0] = wr;
+                z[1] = wi;
+                if (!(mag2 < lim2)) {
+                    return n;
+                }
+                n++;
+                if (n >= depth) {
+                    return n;
+                }
+                boolean glitch = mag2 < GLITCH * (zr[m] * zr[m] + zi[m] * zi[m]);
+                if (glitch || mag2 < dr * dr + di * di || m >= last) {
+                    if (glitch) {
+                        glitches.increment();
+                    }
+                    rebases.increment();
+                    dr = wr;
+                    di = wi;
+                    m = 0;
+                }
+            }
+        }
+
+        long rebases() {
+            return rebases.sum();
+        }
+
+        long glitches() {
+            return glitches.sum();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package fractal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Framebuffer backed by a direct buffer, so the pixels live off the heap.
+ * @author Shubham
+ */
+final class DirectFramebuffer implements Framebuffer {
+
+    private final int width, height;
+    private final IntBuffer pixels;
+
+    /**
+     * @throws IllegalArgumentException If the pixels need more than
+     * Integer.MAX_VALUE bytes, the most one direct buffer can hold
+     */
+    DirectFramebuffer(int width, int height) {
+        long bytes = 4L * width * height;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(width + "x" + height
+                    + " needs " + bytes + " bytes; a direct buffer holds at most " + Integer.MAX_VALUE);
+        }
+        this.width = width;
+        this.height = height;
+        this.pixels = ByteBuffer.allocateDirect((int) bytes)
+                .order(ByteOrder.nativeOrder())
+                .asIntBuffer();
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public int height() {
+        return height;
+    }
+
+    @Override
+    public int get(int index) {
+        return pixels.get(index);
+    }
+
+    @Override
+    public void set(int index, int rgb) {
+        pixels.put(index, rgb);
+    }
+}
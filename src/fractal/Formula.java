@@ -0,0 +1,728 @@
+package fractal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles updater formulas such as "z^3 + c" or "exp(z^3) - 0.59" into
+ * PrimitiveUpdaters.
+ * <p>
+ * A formula may use z (the current value), c (the start value), i, real
+ * numbers (a number directly followed by i is imaginary), + - * / ^,
+ * parentheses and the functions exp, log, sin, cos, sinh, cosh and conj.
+ * Constant subexpressions are folded, powers by integer constants are reduced
+ * to unrolled multiplications by repeated squaring, and real constants are
+ * multiplied and divided as scalars.
+ * <p>
+ * The result is turned into Java source working on primitive doubles and
+ * compiled at runtime with the system Java compiler, so it runs as fast as a
+ * hand-written updater. Where no compiler is available (e.g. on a JRE) the
+ * formula is interpreted instead. Formulas of the form z^n + c are mapped
+ * to Updaters.power(n) so they keep their fast paths.
+ * @author Shubham
+ */
+public final class Formula {
+
+    private static final AtomicInteger CLASSES = new AtomicInteger();
+
+    private Formula(){}
+
+    /**
+     * @param source The formula
+     * @return An updater computing it
+     * @throws IllegalArgumentException If the formula cannot be parsed
+     */
+    public static PrimitiveUpdater compile(String source){
+        Node n = new Parser(source).parse();
+        int degree = degree(n);
+        if (degree > 0) {
+            return Updaters.power(degree);
+        }
+        PrimitiveUpdater u = generate(n);
+        return u != null ? u : interpret(n);
+    }
+
+    /**
+     * Like compile, but never generates bytecode.
+     * @param source The formula
+     * @return An updater interpreting it
+     * @throws IllegalArgumentException If the formula cannot be parsed
+     */
+    public static PrimitiveUpdater interpret(String source){
+        return interpret(new Parser(source).parse());
+    }
+
+    /**
+     * @return n if the formula is z^n + c with n &gt;= 2, 0 otherwise
+     */
+    private static int degree(Node n){
+        if (!(n instanceof Binary) || ((Binary) n).op != '+') {
+            return 0;
+        }
+        Node a = ((Binary) n).a, b = ((Binary) n).b;
+        if (a == Var.C) {
+            Node t = a;
+            a = b;
+            b = t;
+        }
+        if (b == Var.C && a instanceof IntPow && ((IntPow) a).a == Var.Z
+                && ((IntPow) a).n >= 2) {
+            return ((IntPow) a).n;
+        }
+        return 0;
+    }
+
+    private static PrimitiveUpdater interpret(Node n){
+        int slots = n.number(2);
+        ThreadLocal<double[]> stack = ThreadLocal.withInitial(() -> new double[2 * slots]);
+        return (z, re, im) -> {
+            double[] s = stack.get();
+            s[0] = z[0];
+            s[1] = z[1];
+            s[2] = re;
+            s[3] = im;
+            n.eval(s);
+            z[0] = s[2 * n.slot];
+            z[1] = s[2 * n.slot + 1];
+        };
+    }
+
+    /**
+     * Compiles the formula to a class, or returns null if that is not
+     * possible here.
+     */
+    private static PrimitiveUpdater generate(Node n){
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+            return null;
+        }
+        String name = "Formula" + CLASSES.incrementAndGet();
+        StringBuilder body = new StringBuilder();
+        Atom result = n.emit(body, new int[1]);
+        String source = "public final class " + name + " implements fractal.PrimitiveUpdater {\n"
+                + "    public void update(double[] z, double cr, double ci) {\n"
+                + "        final double zr = z[0], zi = z[1];\n"
+                + body
+                + "        z[0] = " + result.r + ";\n"
+                + "        z[1] = " + result.i + ";\n"
+                + "    }\n"
+                + "}\n";
+        Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+        StandardJavaFileManager std = javac.getStandardFileManager(null, null, null);
+        ForwardingJavaFileManager<StandardJavaFileManager> files
+                = new ForwardingJavaFileManager<StandardJavaFileManager>(std) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className,
+                    JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("mem:///" + className + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        classes.put(className, out);
+                        return out;
+                    }
+                };
+            }
+        };
+        JavaFileObject file = new SimpleJavaFileObject(
+                URI.create("string:///" + name + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        List<String> options = new ArrayList<>();
+        try {
+            String here = new File(PrimitiveUpdater.class.getProtectionDomain()
+                    .getCodeSource().getLocation().toURI()).getPath();
+            options.addAll(Arrays.asList("-classpath", here));
+        } catch (Exception ex) {
+            //Fall back on the compiler's own classpath
+        }
+        Boolean ok = javac.getTask(null, files, d -> { }, options, null,
+                Arrays.asList(file)).call();
+        if (ok == null || !ok || !classes.containsKey(name)) {
+            return null;
+        }
+        byte[] bytes = classes.get(name).toByteArray();
+        ClassLoader loader = new ClassLoader(Formula.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String cn) throws ClassNotFoundException {
+                if (!cn.equals(name)) {
+                    throw new ClassNotFoundException(cn);
+                }
+                return defineClass(cn, bytes, 0, bytes.length);
+            }
+        };
+        try {
+            return (PrimitiveUpdater) loader.loadClass(name).getConstructor().newInstance();
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * The value of a node in generated code: two Java expressions, each
+     * either a variable name or a literal.
+     */
+    private static final class Atom {
+
+        final String r, i;
+
+        Atom(String r, String i) {
+            this.r = r;
+            this.i = i;
+        }
+    }
+
+    /**
+     * A node of the parsed formula. For interpretation every node owns one
+     * complex slot of a stack array; slots 0 and 1 are z and c.
+     */
+    private abstract static class Node {
+
+        int slot;
+
+        /**
+         * Assigns slots to this node and its children, from next onwards.
+         * @return The next free slot
+         */
+        abstract int number(int next);
+
+        /**
+         * Evaluates this node into its slot of s.
+         */
+        abstract void eval(double[] s);
+
+        /**
+         * Appends statements computing this node to body.
+         * @param temps Counter for naming temporaries
+         * @return Where the value ends up
+         */
+        abstract Atom emit(StringBuilder body, int[] temps);
+
+        boolean constant() {
+            return false;
+        }
+    }
+
+    private static final class Var extends Node {
+
+        static final Var Z = new Var(0, "z");
+        static final Var C = new Var(1, "c");
+
+        private final String name;
+
+        private Var(int slot, String name) {
+            this.slot = slot;
+            this.name = name;
+        }
+
+        @Override
+        int number(int next) {
+            return next;
+        }
+
+        @Override
+        void eval(double[] s) {
+        }
+
+        @Override
+        Atom emit(StringBuilder body, int[] temps) {
+            return new Atom(name + "r", name + "i");
+        }
+    }
+
+    private static final class Const extends Node {
+
+        final double r, i;
+
+        Const(double r, double i) {
+            this.r = r;
+            this.i = i;
+        }
+
+        @Override
+        boolean constant() {
+            return true;
+        }
+
+        @Override
+        int number(int next) {
+            slot = next;
+            return next + 1;
+        }
+
+        @Override
+        void eval(double[] s) {
+            s[2 * slot] = r;
+            s[2 * slot + 1] = i;
+        }
+
+        @Override
+        Atom emit(StringBuilder body, int[] temps) {
+            return new Atom(literal(r), literal(i));
+        }
+
+        private static String literal(double d) {
+            return Double.isNaN(d) ? "Double.NaN"
+                    : Double.isInfinite(d) ? (d > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY")
+                    : "(" + Double.toString(d) + ")";
+        }
+    }
+
+    /**
+     * Binary operators + - * / and ^ with a non-integer exponent.
+     */
+    private static final class Binary extends Node {
+
+        final char op;
+        final Node a, b;
+
+        Binary(char op, Node a, Node b) {
+            this.op = op;
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        int number(int next) {
+            next = b.number(a.number(next));
+            slot = next;
+            return next + 1;
+        }
+
+        @Override
+        void eval(double[] s) {
+            a.eval(s);
+            b.eval(s);
+            double ar = s[2 * a.slot], ai = s[2 * a.slot + 1];
+            double br = s[2 * b.slot], bi = s[2 * b.slot + 1];
+            double r, i;
+            switch (op) {
+                case '+':
+                    r = ar + br;
+                    i = ai + bi;
+                    break;
+                case '-':
+                    r = ar - br;
+                    i = ai - bi;
+                    break;
+                case '*':
+                    r = ar * br - ai * bi;
+                    i = ar * bi + ai * br;
+                    break;
+                case '/': {
+                    double d = br * br + bi * bi;
+                    r = (ar * br + ai * bi) / d;
+                    i = (ai * br - ar * bi) / d;
+                    break;
+                }
+                default: {
+                    //a^b = exp(b log a)
+                    double lr = Math.log(Math.hypot(ar, ai)), li = Math.atan2(ai, ar);
+                    double er = br * lr - bi * li, ei = br * li + bi * lr;
+                    double e = Math.exp(er);
+                    r = e * Math.cos(ei);
+                    i = e * Math.sin(ei);
+                }
+            }
+            s[2 * slot] = r;
+            s[2 * slot + 1] = i;
+        }
+
+        @Override
+        Atom emit(StringBuilder body, int[] temps) {
+            Atom x = a.emit(body, temps), y = b.emit(body, temps);
+            String t = "t" + (temps[0]++);
+            boolean realB = b instanceof Const && ((Const) b).i == 0;
+            switch (op) {
+                case '+':
+                    return define(body, t, x.r + " + " + y.r, x.i + " + " + y.i);
+                case '-':
+                    return define(body, t, x.r + " - " + y.r, x.i + " - " + y.i);
+                case '*':
+                    if (realB) {
+                        return define(body, t, x.r + " * " + y.r, x.i + " * " + y.r);
+                    }
+                    return define(body, t, x.r + " * " + y.r + " - " + x.i + " * " + y.i,
+                            x.r + " * " + y.i + " + " + x.i + " * " + y.r);
+                case '/':
+                    if (realB) {
+                        return define(body, t, x.r + " / " + y.r, x.i + " / " + y.r);
+                    }
+                    body.append("        final double ").append(t).append("d = ")
+                            .append(y.r).append(" * ").append(y.r).append(" + ")
+                            .append(y.i).append(" * ").append(y.i).append(";\n");
+                    return define(body, t,
+                            "(" + x.r + " * " + y.r + " + " + x.i + " * " + y.i + ") / " + t + "d",
+                            "(" + x.i + " * " + y.r + " - " + x.r + " * " + y.i + ") / " + t + "d");
+                default:
+                    body.append("        final double ").append(t).append("lr = Math.log(Math.hypot(")
+                            .append(x.r).append(", ").append(x.i).append(")), ")
+                            .append(t).append("li = Math.atan2(").append(x.i).append(", ")
+                            .append(x.r).append(");\n");
+                    body.append("        final double ").append(t).append("e = Math.exp(")
+                            .append(y.r).append(" * ").append(t).append("lr - ")
+                            .append(y.i).append(" * ").append(t).append("li), ")
+                            .append(t).append("a = ").append(y.r).append(" * ").append(t)
+                            .append("li + ").append(y.i).append(" * ").append(t).append("lr;\n");
+                    return define(body, t, t + "e * Math.cos(" + t + "a)",
+                            t + "e * Math.sin(" + t + "a)");
+            }
+        }
+    }
+
+    /**
+     * a^n for an integer constant n, by repeated squaring.
+     */
+    private static final class IntPow extends Node {
+
+        final Node a;
+        final int n;
+
+        IntPow(Node a, int n) {
+            this.a = a;
+            this.n = n;
+        }
+
+        @Override
+        int number(int next) {
+            next = a.number(next);
+            slot = next;
+            return next + 1;
+        }
+
+        @Override
+        void eval(double[] s) {
+            a.eval(s);
+            double[] z = {s[2 * a.slot], s[2 * a.slot + 1]};
+            Updaters.pow(z, n);
+            s[2 * slot] = z[0];
+            s[2 * slot + 1] = z[1];
+        }
+
+        @Override
+        Atom emit(StringBuilder body, int[] temps) {
+            Atom base = a.emit(body, temps);
+            Atom result = null;
+            for (int e = Math.abs(n); e > 0; e >>= 1) {
+                if ((e & 1) != 0) {
+                    result = result == null ? base : multiply(body, temps, result, base);
+                }
+                if (e > 1) {
+                    base = multiply(body, temps, base, base);
+                }
+            }
+            if (result == null) {
+                return new Atom("1.0", "0.0");
+            }
+            if (n < 0) {
+                String t = "t" + (temps[0]++);
+                body.append("        final double ").append(t).append("d = ")
+                        .append(result.r).append(" * ").append(result.r).append(" + ")
+                        .append(result.i).append(" * ").append(result.i).append(";\n");
+                result = define(body, t, result.r + " / " + t + "d", "-" + result.i + " / " + t + "d");
+            }
+            return result;
+        }
+
+        private static Atom multiply(StringBuilder body, int[] temps, Atom x, Atom y) {
+            String t = "t" + (temps[0]++);
+            if (x == y) {
+                return define(body, t, x.r + " * " + x.r + " - " + x.i + " * " + x.i,
+                        "2.0 * " + x.r + " * " + x.i);
+            }
+            return define(body, t, x.r + " * " + y.r + " - " + x.i + " * " + y.i,
+                    x.r + " * " + y.i + " + " + x.i + " * " + y.r);
+        }
+    }
+
+    /**
+     * Unary minus and the named functions.
+     */
+    private static final class Unary extends Node {
+
+        final String f;
+        final Node a;
+
+        Unary(String f, Node a) {
+            this.f = f;
+            this.a = a;
+        }
+
+        @Override
+        int number(int next) {
+            next = a.number(next);
+            slot = next;
+            return next + 1;
+        }
+
+        @Override
+        void eval(double[] s) {
+            a.eval(s);
+            double ar = s[2 * a.slot], ai = s[2 * a.slot + 1];
+            double r, i;
+            switch (f) {
+                case "-":
+                    r = -ar;
+                    i = -ai;
+                    break;
+                case "conj":
+                    r = ar;
+                    i = -ai;
+                    break;
+                case "exp": {
+                    double e = Math.exp(ar);
+                    r = e * Math.cos(ai);
+                    i = e * Math.sin(ai);
+                    break;
+                }
+                case "log":
+                    r = Math.log(Math.hypot(ar, ai));
+                    i = Math.atan2(ai, ar);
+                    break;
+                case "sin":
+                    r = Math.sin(ar) * Math.cosh(ai);
+                    i = Math.cos(ar) * Math.sinh(ai);
+                    break;
+                case "cos":
+                    r = Math.cos(ar) * Math.cosh(ai);
+                    i = -Math.sin(ar) * Math.sinh(ai);
+                    break;
+                case "sinh":
+                    r = Math.sinh(ar) * Math.cos(ai);
+                    i = Math.cosh(ar) * Math.sin(ai);
+                    break;
+                default: //cosh
+                    r = Math.cosh(ar) * Math.cos(ai);
+                    i = Math.sinh(ar) * Math.sin(ai);
+            }
+            s[2 * slot] = r;
+            s[2 * slot + 1] = i;
+        }
+
+        @Override
+        Atom emit(StringBuilder body, int[] temps) {
+            Atom x = a.emit(body, temps);
+            String t = "t" + (temps[0]++);
+            switch (f) {
+                case "-":
+                    return define(body, t, "-" + x.r, "-" + x.i);
+                case "conj":
+                    return define(body, t, x.r, "-" + x.i);
+                case "exp":
+                    body.append("        final double ").append(t).append("e = Math.exp(")
+                            .append(x.r).append(");\n");
+                    return define(body, t, t + "e * Math.cos(" + x.i + ")",
+                            t + "e * Math.sin(" + x.i + ")");
+                case "log":
+                    return define(body, t, "Math.log(Math.hypot(" + x.r + ", " + x.i + "))",
+                            "Math.atan2(" + x.i + ", " + x.r + ")");
+                case "sin":
+                    return define(body, t, "Math.sin(" + x.r + ") * Math.cosh(" + x.i + ")",
+                            "Math.cos(" + x.r + ") * Math.sinh(" + x.i + ")");
+                case "cos":
+                    return define(body, t, "Math.cos(" + x.r + ") * Math.cosh(" + x.i + ")",
+                            "-Math.sin(" + x.r + ") * Math.sinh(" + x.i + ")");
+                case "sinh":
+                    return define(body, t, "Math.sinh(" + x.r + ") * Math.cos(" + x.i + ")",
+                            "Math.cosh(" + x.r + ") * Math.sin(" + x.i + ")");
+                default:
+                    return define(body, t, "Math.cosh(" + x.r + ") * Math.cos(" + x.i + ")",
+                            "Math.sinh(" + x.r + ") * Math.sin(" + x.i + ")");
+            }
+        }
+    }
+
+    /**
+     * Appends the definition of temporary t and returns it.
+     */
+    private static Atom define(StringBuilder body, String t, String r, String i) {
+        body.append("        final double ").append(t).append("r = ").append(r).append(", ")
+                .append(t).append("i = ").append(i).append(";\n");
+        return new Atom(t + "r", t + "i");
+    }
+
+    /**
+     * Recursive descent parser. Constant subtrees are folded as they are
+     * built.
+     */
+    private static final class Parser {
+
+        private static final List<String> FUNCTIONS
+                = Arrays.asList("exp", "log", "sin", "cos", "sinh", "cosh", "conj");
+
+        private final String src;
+        private int pos = 0;
+
+        Parser(String src) {
+            this.src = src;
+        }
+
+        Node parse() {
+            Node n = expr();
+            skip();
+            if (pos < src.length()) {
+                throw error("Unexpected '" + src.charAt(pos) + "'");
+            }
+            return n;
+        }
+
+        private Node expr() {
+            Node n = term();
+            for (char op = peek(); op == '+' || op == '-'; op = peek()) {
+                pos++;
+                n = fold(new Binary(op, n, term()));
+            }
+            return n;
+        }
+
+        private Node term() {
+            Node n = unary();
+            for (char op = peek(); op == '*' || op == '/'; op = peek()) {
+                pos++;
+                n = fold(new Binary(op, n, unary()));
+            }
+            return n;
+        }
+
+        private Node unary() {
+            if (peek() == '-') {
+                pos++;
+                return fold(new Unary("-", unary()));
+            }
+            if (peek() == '+') {
+                pos++;
+                return unary();
+            }
+            return power();
+        }
+
+        private Node power() {
+            Node base = primary();
+            if (peek() != '^') {
+                return base;
+            }
+            pos++;
+            Node e = unary();
+            if (e instanceof Const && ((Const) e).i == 0) {
+                double n = ((Const) e).r;
+                if (n == Math.rint(n) && Math.abs(n) <= 1 << 16) {
+                    return fold(new IntPow(base, (int) n));
+                }
+            }
+            return fold(new Binary('^', base, e));
+        }
+
+        private Node primary() {
+            char ch = peek();
+            if (ch == '(') {
+                pos++;
+                Node n = expr();
+                expect(')');
+                return n;
+            }
+            if (Character.isDigit(ch) || ch == '.') {
+                int from = pos;
+                while (pos < src.length() && (Character.isDigit(src.charAt(pos))
+                        || src.charAt(pos) == '.' || src.charAt(pos) == 'e'
+                        || src.charAt(pos) == 'E'
+                        || ((src.charAt(pos) == '-' || src.charAt(pos) == '+')
+                                && (src.charAt(pos - 1) == 'e' || src.charAt(pos - 1) == 'E')))) {
+                    pos++;
+                }
+                double d;
+                try {
+                    d = Double.parseDouble(src.substring(from, pos));
+                } catch (NumberFormatException ex) {
+                    throw error("Bad number '" + src.substring(from, pos) + "'");
+                }
+                if (pos < src.length() && src.charAt(pos) == 'i'
+                        && (pos + 1 == src.length() || !Character.isLetterOrDigit(src.charAt(pos + 1)))) {
+                    pos++;
+                    return new Const(0, d);
+                }
+                return new Const(d, 0);
+            }
+            if (Character.isLetter(ch)) {
+                int from = pos;
+                while (pos < src.length() && Character.isLetter(src.charAt(pos))) {
+                    pos++;
+                }
+                String word = src.substring(from, pos);
+                switch (word) {
+                    case "z":
+                        return Var.Z;
+                    case "c":
+                        return Var.C;
+                    case "i":
+                        return new Const(0, 1);
+                    default:
+                        if (!FUNCTIONS.contains(word)) {
+                            pos = from;
+                            throw error("Unknown name '" + word + "'");
+                        }
+                        expect('(');
+                        Node a = expr();
+                        expect(')');
+                        return fold(new Unary(word, a));
+                }
+            }
+            throw error(pos < src.length() ? "Unexpected '" + ch + "'" : "Unexpected end");
+        }
+
+        /**
+         * @return n, or its value if it only involves constants
+         */
+        private static Node fold(Node n) {
+            boolean constant = n instanceof Binary
+                    ? ((Binary) n).a.constant() && ((Binary) n).b.constant()
+                    : n instanceof IntPow ? ((IntPow) n).a.constant()
+                    : ((Unary) n).a.constant();
+            if (!constant) {
+                return n;
+            }
+            double[] s = new double[2 * n.number(2)];
+            n.eval(s);
+            return new Const(s[2 * n.slot], s[2 * n.slot + 1]);
+        }
+
+        private char peek() {
+            skip();
+            return pos < src.length() ? src.charAt(pos) : '\0';
+        }
+
+        private void skip() {
+            while (pos < src.length() && Character.isWhitespace(src.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private void expect(char ch) {
+            if (peek() != ch) {
+                throw error("Expected '" + ch + "'");
+            }
+            pos++;
+        }
+
+        private IllegalArgumentException error(String msg) {
+            return new IllegalArgumentException(msg + " at " + pos + " in \"" + src + "\"");
+        }
+    }
+}
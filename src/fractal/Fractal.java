@@ -1,10 +1,18 @@
 package fractal;
 
-import java.io.BufferedWriter;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 import org.apache.commons.math3.complex.Complex;
 import org.apache.commons.math3.complex.ComplexUtils;
 
@@ -17,7 +25,9 @@ import org.apache.commons.math3.complex.ComplexUtils;
  */
 public class Fractal {
 
-    private static final boolean USE_IMAGICK = true;
+    private static final int TILE = 32; //Largest tile edge handed to a single task
+    private static final int MIN_TRACE = 4; //Rectangles this thin are iterated outright
+    static final Function<Double, Double> NO_WARP = a -> a; //Identity warp; renders skip the polar round trip for it
 
     private final int width; //Width of the final fractal image
     private final int depth; //Maximum number of iterations
@@ -25,42 +35,103 @@ public class Fractal {
     private final float inf_lim; //bailout value
     private final Complex offset; //offset the origin to draw different areas of the field
     private final Updater update; //Z_(n+1) = update(Z_n)
-    private final Painter paint; //Converts the fractal model to color
+    private final PrimitiveUpdater kernel; //Allocation-free update, may be null
+    private RgbPainter paint; //Converts the fractal model to color
     private final Function<Double, Double> warp; //Twist the fractal to create snowflakes
     private final Complex start; //Z_0 = start
     private final Function<Complex, Double> trap; //The trap used to estimate distance
+    private final Trap orbitTrap; //Primitive form of trap, null without a trap
+    private final Object trapKey; //The trap as given, which the tile cache keys on
+    private final int threads; //Number of render threads, 1 renders serially
+    private final ForkJoinPool pool; //Shared pool to render on, may be null
+    private final ImageSink sink; //Encodes the finished image
+    private final RenderMode mode; //Which pixels get iterated
+    private final LongAdder skipped = new LongAdder(); //Pixels filled without iterating
+    private final InteriorDetector interior; //Stops early on interior points, may be null
+    private final boolean mandelbrot; //Z^2 + C from Z_0 = C, so the cardioid test applies
+    private final DeepZoom deep; //Perturbation renderer for deep zooms, may be null
+    private DeepZoom.Orbit orbit; //Reference orbit for deep, iterated on first draw
+    private final boolean lanes; //Brute force tiles can use LaneKernel
+    private final boolean keepRaw; //Keep the iteration results for the next frame
+    private Fractal previous; //Earlier frame to reuse results from, may be null
+    private final double tolerance; //How far in pixels a reused sample may be off
+    private long reused; //Pixels copied from previous on the last draw
+    private IterationBuffer raw; //Iteration results, when kept or needed
+    private int[] counts; //Newton counts for unfold when raw is not kept, else null
+    private byte[] roots; //Newton root index per pixel alongside counts, -1 for none
+    private final TileCache cache; //Iterated tiles shared between Fractals, may be null
+    private final RenderListener listener; //Receives progressive passes, may be null
+    private final int coarsest; //Sample spacing of the first progressive pass
+    private volatile boolean cancelled; //Set by cancel() to stop a render early
+    private final int grid; //Supersampling grid for edge pixels, 1 for none
+    private long supersampled; //Edge pixels supersampled on the last draw
+    private final RenderStats stats; //Receives metrics, may be null
+    private final Newton newton; //Root-finding render in place of escape time, may be null
+    private Colouring colouring; //How counts become painter values
+    private float[] cdf; //Histogram CDF by count from the last HISTOGRAM pass
+    private final Symmetry symmetry; //Usable on this pixel grid, may be null
+    private Symmetry folded; //Symmetry the last render used, may be null
+    private long mirrored; //Pixels copied by symmetry on the last draw
 
-    private final String[] output; //Holds all the pixels before printing to file
+    private Framebuffer output; //Holds all the pixels before printing to file, allocated on first draw
+    private final boolean offHeap; //Allocate output in direct memory
     //Necessare since pixels are generated out of order
 
     public Fractal(int width, int depth, float scale, float inf_lim, Complex offset, Updater update, Painter paint, Function<Double, Double> warp, Function<Complex, Double> t, Complex start) {
-        this.width = width;
-        this.depth = depth;
-        this.scale = scale;
-        this.inf_lim = inf_lim;
-        this.offset = offset;
-        this.update = update;
-        this.paint = paint;
-        this.warp = warp;
-        this.trap = t;
-        this.start = start;
-        this.output = new String[4 * width * width];
+        this(new Builder().width(width).depth(depth).scale(scale)
+                .infLim(inf_lim).offset(offset).update(update).paint(paint)
+                .warp(warp).trap(t).start(start));
     }
 
-    /**
-     * Holds the number of iterations before bailout and a complex number. The
-     * complex number is the final value at bailout (escape time) or the closest
-     * approach to the trap (orbit trap)
-     */
-    private static class Pair {
-
-        public int n;
-        public Complex c;
-
-        public Pair(int n, Complex c) {
-            this.n = n;
-            this.c = c;
-        }
+    private Fractal(Builder b) {
+        this.width = b.width;
+        this.depth = b.depth;
+        this.scale = b.scale;
+        this.inf_lim = b.inf_lim;
+        this.offset = b.offset;
+        this.update = b.update;
+        this.kernel = b.kernel;
+        this.paint = b.palette == null ? b.paint
+                : b.buckets == 1 ? Palette.of(b.palette, b.depth)
+                : Palette.angular(b.palette, b.depth, b.buckets);
+        this.warp = b.warp;
+        this.orbitTrap = b.orbitTrap != null ? b.orbitTrap
+                : b.trap == null ? null
+                : (re, im) -> b.trap.apply(new Complex(re, im));
+        this.trap = b.trap != null ? b.trap
+                : b.orbitTrap == null ? null
+                : z -> b.orbitTrap.distance(z.getReal(), z.getImaginary());
+        this.trapKey = b.trap != null ? b.trap : b.orbitTrap;
+        this.start = b.start;
+        this.threads = b.threads;
+        this.pool = b.pool;
+        this.sink = b.sink;
+        this.mode = b.mode;
+        this.interior = b.interior;
+        this.deep = b.deep;
+        this.newton = b.newton;
+        this.lanes = b.vectorize && trap == null && deep == null && newton == null
+                && interior == null && kernel != null && kernel.degree() >= 2;
+        this.keepRaw = b.incremental;
+        this.previous = b.previous;
+        this.tolerance = b.tolerance;
+        this.cache = deep == null && newton == null ? b.cache : null;
+        this.listener = b.listener;
+        this.coarsest = b.coarsest;
+        this.grid = b.grid;
+        this.stats = b.stats;
+        this.colouring = b.colouring;
+        Symmetry sym = b.symmetry != null ? b.symmetry
+                : trap != null || warp != NO_WARP ? Symmetry.NONE
+                : newton != null ? newton.symmetry()
+                : kernel != null ? kernel.symmetry()
+                : Symmetry.NONE;
+        this.symmetry = deep == null && listener == null
+                ? sym.grid(offset, start) : null;
+        this.mandelbrot = kernel != null && kernel.degree() == 2
+                && start == null && warp == NO_WARP;
+        this.output = b.output;
+        this.offHeap = b.offHeap;
     }
 
     /**
@@ -74,29 +145,73 @@ public class Fractal {
         private float inf_lim;
         private Complex offset;
         private Updater update;
-        private Painter paint;
+        private PrimitiveUpdater kernel;
+        private RgbPainter paint;
+        private RgbPainter palette;
+        private int buckets;
         private Function<Double, Double> warp;
         private Function<Complex, Double> trap;
+        private Trap orbitTrap;
         private Complex start;
+        private int threads;
+        private ForkJoinPool pool;
+        private boolean offHeap;
+        private Framebuffer output;
+        private ImageSink sink;
+        private RenderMode mode;
+        private InteriorDetector interior;
+        private DeepZoom deep;
+        private boolean vectorize;
+        private boolean incremental;
+        private Fractal previous;
+        private double tolerance;
+        private TileCache cache;
+        private RenderListener listener;
+        private int coarsest;
+        private int grid;
+        private RenderStats stats;
+        private Newton newton;
+        private Colouring colouring;
+        private Symmetry symmetry;
 
         public Builder() {
             width = depth = 100;
             scale = 2.5f;
             inf_lim = 5.0f;
             offset = new Complex(0.0, 0.0);
-            update = ((c, o) -> c.pow(2).add(o));
-            paint = ((v, c) -> {
-                int val = (int) (v * 255.0);
-                return val + " " + val + " " + val;
-            });
-            warp = a -> a;
+            kernel = Updaters.quadratic();
+            update = Updaters.boxed(kernel);
+            paint = RgbPainter.valueOnly(Painters::blackWhitePaint);
+            palette = null;
+            buckets = 1;
+            warp = NO_WARP;
             trap = null;
+            orbitTrap = null;
             start = null;
+            threads = 1;
+            pool = null;
+            offHeap = false;
+            output = null;
+            sink = ImageSinks.png();
+            mode = RenderMode.BRUTE_FORCE;
+            interior = null;
+            deep = null;
+            vectorize = true;
+            incremental = false;
+            previous = null;
+            tolerance = 0;
+            cache = null;
+            listener = null;
+            coarsest = 1;
+            grid = 1;
+            stats = null;
+            newton = null;
+            colouring = Colouring.LINEAR;
+            symmetry = null;
         }
 
         public Fractal build() {
-            return new Fractal(width, depth, scale, inf_lim,
-                    offset, update, paint, warp, trap, start);
+            return new Fractal(this);
         }
 
         public Builder width(int w) {
@@ -126,11 +241,49 @@ public class Fractal {
 
         public Builder update(Updater u) {
             this.update = u;
+            this.kernel = null;
+            return this;
+        }
+
+        /**
+         * Use an allocation-free updater for escape-time and orbit-trap
+         * renders.
+         */
+        public Builder primitiveUpdate(PrimitiveUpdater u) {
+            this.kernel = u;
+            this.update = Updaters.boxed(u);
             return this;
         }
 
         public Builder paint(Painter p) {
+            this.paint = RgbPainter.of(p);
+            this.palette = null;
+            return this;
+        }
+
+        public Builder rgbPaint(RgbPainter p) {
             this.paint = p;
+            this.palette = null;
+            return this;
+        }
+
+        /**
+         * Paint from a Palette of p at this fractal's depth. p may only
+         * depend on the value.
+         */
+        public Builder palette(RgbPainter p) {
+            this.palette = p;
+            this.buckets = 1;
+            return this;
+        }
+
+        /**
+         * Paint from an angular Palette of p at this fractal's depth. p may
+         * only depend on the value and the argument of the final z.
+         */
+        public Builder angularPalette(RgbPainter p, int buckets) {
+            this.palette = p;
+            this.buckets = buckets;
             return this;
         }
 
@@ -141,6 +294,17 @@ public class Fractal {
 
         public Builder trap(Function<Complex, Double> t) {
             this.trap = t;
+            this.orbitTrap = null;
+            return this;
+        }
+
+        /**
+         * Orbit-trap render with a primitive trap, which together with a
+         * primitiveUpdate runs without allocating. See Traps.
+         */
+        public Builder orbitTrap(Trap t) {
+            this.orbitTrap = t;
+            this.trap = null;
             return this;
         }
 
@@ -148,6 +312,175 @@ public class Fractal {
             this.start = s;
             return this;
         }
+
+        /**
+         * Render tiles in parallel on a private pool of this many threads.
+         */
+        public Builder threads(int t) {
+            this.threads = t;
+            return this;
+        }
+
+        /**
+         * Render tiles in parallel on an existing pool, e.g. one shared by
+         * every frame of a Movie. Takes precedence over threads.
+         */
+        public Builder executor(ForkJoinPool p) {
+            this.pool = p;
+            return this;
+        }
+
+        /**
+         * Keep the image in direct memory instead of on the heap.
+         */
+        public Builder offHeap(boolean o) {
+            this.offHeap = o;
+            return this;
+        }
+
+        /**
+         * Paint into an existing framebuffer, which must be 2 * width
+         * pixels square, instead of allocating a new one.
+         */
+        public Builder framebuffer(Framebuffer fb) {
+            this.output = fb;
+            return this;
+        }
+
+        public Builder sink(ImageSink s) {
+            this.sink = s;
+            return this;
+        }
+
+        public Builder mode(RenderMode m) {
+            this.mode = m;
+            return this;
+        }
+
+        public Builder interior(InteriorDetector d) {
+            this.interior = d;
+            return this;
+        }
+
+        /**
+         * Render the Mandelbrot set by perturbation around a high precision
+         * centre. Replaces scale, offset and the updater for escape-time
+         * renders.
+         */
+        public Builder deepZoom(DeepZoom d) {
+            this.deep = d;
+            return this;
+        }
+
+        /**
+         * Whether Z^n + C renders may iterate several pixels at once with
+         * LaneKernel, on SIMD units where the Vector API backend is
+         * available. On by default; the images are identical either way.
+         */
+        public Builder vectorize(boolean v) {
+            this.vectorize = v;
+            return this;
+        }
+
+        /**
+         * Keep this fractal's iteration results, and copy over those of the
+         * previous frame wherever one of its pixels lands on a pixel of this
+         * one. Only the remaining pixels are iterated. Results are only
+         * reused if everything but scale and offset is unchanged, including
+         * the identity of the updater and warp.
+         *
+         * @param p The previous frame, drawn in incremental mode, or null
+         * @param tol How far, in pixels of p, a point may be from the nearest
+         * pixel of p and still reuse it; 0 requires an exact match
+         */
+        public Builder incremental(Fractal p, double tol) {
+            this.incremental = true;
+            this.previous = p;
+            this.tolerance = tol;
+            return this;
+        }
+
+        /**
+         * Look up iterated tiles in a cache before iterating them, and store
+         * the ones that had to be iterated. Applies to brute force renders
+         * that are not deep zooms, unless they reuse a previous frame.
+         */
+        public Builder cache(TileCache c) {
+            this.cache = c;
+            return this;
+        }
+
+        /**
+         * Render in passes, first sampling every coarsest-th pixel in each
+         * direction and then halving the spacing until every pixel is done.
+         * Samples from earlier passes are kept, and the listener sees the
+         * image after every pass. Takes precedence over the render mode.
+         *
+         * @param coarsest A power of two, e.g. 16
+         * @param l Called after each pass
+         */
+        public Builder progressive(int coarsest, RenderListener l) {
+            this.coarsest = coarsest;
+            this.listener = l;
+            return this;
+        }
+
+        /**
+         * Adaptive anti-aliasing: after the render, every pixel whose colour
+         * differs from a neighbour's is replaced by the average of a jittered
+         * grid x grid samples. Smooth regions cost nothing extra. Applies to
+         * drawFractal, not drawBand.
+         *
+         * @param grid Samples per side, 1 to turn it off
+         */
+        public Builder antiAlias(int grid) {
+            this.grid = grid;
+            return this;
+        }
+
+        /**
+         * Count iterations, pixels and time per tile and per phase into s.
+         * Serial renders are then drawn tile by tile.
+         */
+        public Builder stats(RenderStats s) {
+            this.stats = s;
+            return this;
+        }
+
+        /**
+         * Render a Newton fractal: every pixel runs Newton's method from its
+         * start value until it converges. Replaces the updater, the trap and
+         * deep zooms.
+         */
+        public Builder newton(Newton n) {
+            this.newton = n;
+            return this;
+        }
+
+        /**
+         * Colour from global statistics of the render. Anything but LINEAR
+         * keeps the iteration results and paints them in a second pass, so
+         * drawBand and StreamingRenderer only take LINEAR.
+         */
+        public Builder colouring(Colouring c) {
+            this.colouring = c;
+            return this;
+        }
+
+        /**
+         * Declare the symmetry of the render, including its warp and trap,
+         * in place of the one detected from a primitive updater or Newton
+         * polynomial. Symmetry.NONE iterates every pixel. Nothing is
+         * detected for renders with a warp or trap. Symmetry is only used
+         * where the iteration results are kept anyway, the painter is
+         * valueOnly, whose colours can be copied, or the render is Newton,
+         * whose pixels only need their count and root. Progressive renders,
+         * deep zooms and drawBand iterate every pixel regardless.
+         */
+        public Builder symmetry(Symmetry s) {
+            this.symmetry = s;
+            return this;
+        }
     }
 
     /**
@@ -156,13 +489,20 @@ public class Fractal {
      * @param x x-coordinate of pixel
      * @param y y-coordinate of pixel
      * @param v shading intensity
-     * @param c final complex value
+     * @param re real part of the final complex value
+     * @param im imaginary part of the final complex value
      */
-    private void paintPixel(int x, int y, float v, Complex c) {
+    private void paintPixel(int x, int y, float v, double re, double im) {
+        output.set(pixelIndex(x, y), paint.paint((v / depth), re, im));
+    }
+
+    /**
+     * @return Where pixel (x, y) lives in the output
+     */
+    private int pixelIndex(int x, int y) {
         x += width;
         y = width - y;
-        int index = ((y * 2 * width) + x) % output.length;
-        output[index] = paint.paint((v / depth), c).trim() + " ";
+        return ((y * 2 * width) + x) % (4 * width * width);
     }
 
     /**
@@ -170,102 +510,1172 @@ public class Fractal {
      *
      * @param x real part
      * @param y imaginary part
-     * @return Pair containing shading information for this pixel
+     * @param z receives the final value of Z as {re, im}
+     * @return the number of iterations before bailout
      */
-    private Pair iterateOn(float x, float y) {
+    private int iterateOn(float x, float y, double[] z) {
         int n = 0;
         Complex c = new Complex(x, y)
                 .multiply(scale / width)
                 .add(offset);
-        Complex z = start == null
+        Complex zc = start == null
                 ? new Complex(c.getReal(), c.getImaginary())
                 : start;
-        double mag = z.abs(), ang = z.getArgument();
+        double mag = zc.abs(), ang = zc.getArgument();
         ang = warp.apply(ang);
-        z = ComplexUtils.polar2Complex(mag, ang);
-        while (z.abs() < inf_lim) {
+        zc = ComplexUtils.polar2Complex(mag, ang);
+        double tol2 = interior == null ? 0 : interior.tolerance2();
+        Complex saved = zc;
+        int steps = 0, check = 1;
+        while (zc.abs() < inf_lim) {
             n++;
             if (n >= depth) {
-                return new Pair(n, z);
+                break;
+            }
+            zc = update.update(zc, c);
+            if (tol2 > 0) {
+                double dr = zc.getReal() - saved.getReal();
+                double di = zc.getImaginary() - saved.getImaginary();
+                if (dr * dr + di * di < tol2) {
+                    interior.cycle();
+                    n = depth;
+                    break;
+                }
+                if (++steps == check) {
+                    steps = 0;
+                    check <<= 1;
+                    saved = zc;
+                }
             }
-            z = update.update(z, c);
         }
-        return new Pair(n, z);
+        z[0] = zc.getReal();
+        z[1] = zc.getImaginary();
+        return n;
+    }
+
+    /**
+     * Sets Z_0 for the point C, applying the start value and warp. Without
+     * a warp Z_0 is copied exactly, so symmetric points start symmetric.
+     *
+     * @param z receives Z_0 as {re, im}
+     */
+    private void seed(double cr, double ci, double[] z) {
+        double zr = start == null ? cr : start.getReal();
+        double zi = start == null ? ci : start.getImaginary();
+        if (warp == NO_WARP) {
+            z[0] = zr;
+            z[1] = zi;
+            return;
+        }
+        double mag = Math.hypot(zr, zi);
+        double ang = warp.apply(Math.atan2(zi, zr));
+        z[0] = mag * Math.cos(ang);
+        z[1] = mag * Math.sin(ang);
     }
 
     /**
-     * Orbit-trap render
+     * Escape-time render on primitive doubles. Nothing is allocated per
+     * iteration, and magnitudes are compared squared to avoid the sqrt.
      *
      * @param x real part
      * @param y imaginary part
-     * @return Pair containing shading information for this pixel
+     * @param z receives the final value of Z as {re, im}
+     * @return the number of iterations before bailout
      */
-    private Pair getDistance(float x, float y) {
+    private int escape(double x, double y, double[] z) {
+        double f = scale / width;
+        double cr = x * f + offset.getReal();
+        double ci = y * f + offset.getImaginary();
+        if (mandelbrot && interior != null && interior.analytic()
+                && interior.inMainBulbs(cr, ci)) {
+            z[0] = cr;
+            z[1] = ci;
+            return depth;
+        }
+        seed(cr, ci, z);
+        double lim = (double) inf_lim * inf_lim;
+        double tol2 = interior == null ? 0 : interior.tolerance2();
+        double sr = z[0], si = z[1];
+        int steps = 0, check = 1;
         int n = 0;
+        while (z[0] * z[0] + z[1] * z[1] < lim) {
+            n++;
+            if (n >= depth) {
+                return n;
+            }
+            kernel.update(z, cr, ci);
+            if (tol2 > 0) {
+                double dr = z[0] - sr, di = z[1] - si;
+                if (dr * dr + di * di < tol2) {
+                    interior.cycle();
+                    return depth;
+                }
+                if (++steps == check) {
+                    steps = 0;
+                    check <<= 1;
+                    sr = z[0];
+                    si = z[1];
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Orbit-trap render on Complex, stopping at the first escape
+     *
+     * @param x real part
+     * @param y imaginary part
+     * @param z receives the closest approach to the trap as {re, im}
+     * @return the number of iterations before bailout
+     */
+    private int getDistance(float x, float y, double[] z) {
+        int n;
         Complex c = new Complex(x, y)
                 .multiply(scale / width)
                 .add(offset);
-        Complex z = start == null
+        Complex zc = start == null
                 ? new Complex(c.getReal(), c.getImaginary())
                 : start;
-        Complex tr = z;
-        double mag = z.abs(), ang = z.getArgument();
+        double mag = zc.abs(), ang = zc.getArgument();
         ang = warp.apply(ang);
-        z = ComplexUtils.polar2Complex(mag, ang);
-        double v = 10E37;
-        for (int i = 0; i < depth; ++i) {
-            z = update.update(z, c);
-            if (z.abs() > inf_lim) {
-                n = i;
-            }
-            double t = trap.apply(z);
-            tr = t < v ? z : tr;
+        zc = ComplexUtils.polar2Complex(mag, ang);
+        Complex tr = zc;
+        double v = Double.POSITIVE_INFINITY;
+        for (n = 0; n < depth; ++n) {
+            zc = update.update(zc, c);
+            if (!(zc.abs() <= inf_lim)) {
+                break;
+            }
+            double t = trap.apply(zc);
+            tr = t < v ? zc : tr;
             v = t < v ? t : v;
         }
-        return new Pair(n, tr);
+        z[0] = tr.getReal();
+        z[1] = tr.getImaginary();
+        return n;
+    }
+
+    /**
+     * Orbit-trap render on primitive doubles. Stops at the first escape,
+     * and only points that have not escaped are trapped.
+     *
+     * @param x real part
+     * @param y imaginary part
+     * @param z receives the closest approach to the trap as {re, im}
+     * @return the number of iterations before bailout
+     */
+    private int trapOn(double x, double y, double[] z) {
+        double f = scale / width;
+        double cr = x * f + offset.getReal();
+        double ci = y * f + offset.getImaginary();
+        seed(cr, ci, z);
+        double lim = (double) inf_lim * inf_lim;
+        double v = Double.POSITIVE_INFINITY;
+        double tr = z[0], ti = z[1];
+        int n;
+        for (n = 0; n < depth; ++n) {
+            kernel.update(z, cr, ci);
+            double zr = z[0], zi = z[1];
+            if (!(zr * zr + zi * zi <= lim)) {
+                break;
+            }
+            double t = orbitTrap.distance(zr, zi);
+            if (t < v) {
+                v = t;
+                tr = zr;
+                ti = zi;
+            }
+        }
+        z[0] = tr;
+        z[1] = ti;
+        return n;
     }
 
     public void drawFractal() {
+        Object event = RenderEvents.EVENTS.beginDraw();
+        long t0 = stats == null ? 0 : System.nanoTime();
+        render();
+        mirrored = 0;
+        if (folded != null && !cancelled) {
+            unfold();
+        }
+        long t1 = stats == null ? 0 : System.nanoTime();
+        supersampled = 0;
+        if (colouring != Colouring.LINEAR && !cancelled) {
+            colour();
+        }
+        long t2 = stats == null ? 0 : System.nanoTime();
+        if (grid > 1 && !cancelled) {
+            antiAlias();
+        }
+        if (stats != null) {
+            stats.drawn(t1 - t0, t2 - t1, System.nanoTime() - t2);
+        }
+        RenderEvents.EVENTS.endDraw(event, width, depth);
+    }
+
+    private void render() {
+        if (output == null) {
+            output = offHeap
+                    ? Framebuffer.direct(2 * width, 2 * width)
+                    : Framebuffer.heap(2 * width, 2 * width);
+        }
+        if (deep != null && orbit == null) {
+            orbit = deep.orbit(width, depth, inf_lim);
+        }
+        boolean trace = mode == RenderMode.BOUNDARY_TRACE && trap == null && newton == null;
+        cancelled = false;
+        raw = null;
+        boolean keep = trace || keepRaw || listener != null || colouring != Colouring.LINEAR;
+        //Without the results, unfold can only copy colours that ignore Z,
+        //or Newton counts and roots
+        boolean compact = !keep && !paint.valueOnly() && newton != null
+                && newton.roots().length <= Byte.MAX_VALUE;
+        folded = keep || paint.valueOnly() || compact ? symmetry : null;
+        counts = folded != null && compact ? new int[4 * width * width] : null;
+        roots = folded != null && compact ? new byte[4 * width * width] : null;
+        if (keep) {
+            raw = new IterationBuffer(4 * width * width);
+            Arrays.fill(raw.n, -1);
+            reproject();
+        }
+        if (listener != null) {
+            drawProgressive();
+            return;
+        }
+        int[][] regions = folded == null
+                ? new int[][]{{-width, width, -width, width}}
+                : folded.regions(width, TILE);
+        if (trace) {
+            skipped.reset();
+        }
+        if (pool == null && threads <= 1) {
+            for (int[] r : regions) {
+                if (trace) {
+                    traceBorder(r).compute();
+                } else if ((cache != null || stats != null) && (raw == null || reused == 0)) {
+                    for (int x = r[0]; x < r[1]; x += TILE) {
+                        for (int y = r[2]; y < r[3]; y += TILE) {
+                            drawTile(x, Math.min(x + TILE, r[1]), y, Math.min(y + TILE, r[3]));
+                        }
+                    }
+                } else {
+                    drawTile(r[0], r[1], r[2], r[3]);
+                }
+            }
+            return;
+        }
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for (int[] r : regions) {
+            tasks.add(trace ? traceBorder(r) : new TileTask(r[0], r[1], r[2], r[3]));
+        }
+        ForkJoinPool fj = pool != null ? pool : new ForkJoinPool(threads);
+        try {
+            fj.invoke(tasks.size() == 1 ? tasks.get(0) : new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } finally {
+            if (fj != pool) {
+                fj.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Fills in every pixel outside the regions render iterated from its
+     * symmetric partner inside them. Without iteration results the painter
+     * ignores Z, so the partner's colour is copied, or the render is Newton,
+     * so the partner's root is mapped to its image root. Newton pixels whose
+     * partner found no root, or whose root has no image, are iterated.
+     */
+    private void unfold() {
+        IterationBuffer r = raw;
+        int[][] image = roots == null ? null : rootImages();
+        Complex[] at = roots == null ? null : newton.roots();
+        LongAdder count = new LongAdder();
+        rows(y -> {
+            int[] s = new int[2];
+            double[] z = new double[2];
+            for (int x = -width; x < width; x++) {
+                int t = folded.fold(x, y, width, s);
+                if (t < 0) {
+                    continue;
+                }
+                if (image != null) {
+                    int j = rawIndex(s[0], s[1]);
+                    int k = roots[j] < 0 ? -1 : image[t][roots[j]];
+                    if (k < 0) {
+                        int n = sample(x, y, z);
+                        paintPixel(x, y, n, z[0], z[1]);
+                    } else {
+                        paintPixel(x, y, counts[j], at[k].getReal(), at[k].getImaginary());
+                        count.increment();
+                    }
+                    continue;
+                }
+                if (r == null) {
+                    output.set(pixelIndex(x, y), output.get(pixelIndex(s[0], s[1])));
+                    count.increment();
+                    continue;
+                }
+                int j = rawIndex(s[0], s[1]);
+                z[0] = r.re[j];
+                z[1] = r.im[j];
+                Symmetry.apply(t, z);
+                if (newton != null && newton.root(r.re[j], r.im[j]) >= 0) {
+                    //Land exactly on the root, not on a rounding of it
+                    newton.snap(z[0], z[1], z);
+                }
+                r.set(rawIndex(x, y), r.n[j], z[0], z[1]);
+                if (colouring == Colouring.LINEAR) {
+                    paintPixel(x, y, r.n[j], z[0], z[1]);
+                }
+                count.increment();
+            }
+        });
+        mirrored = count.sum();
+        counts = null;
+        roots = null;
+    }
+
+    /**
+     * @return For each transform t, the index of the root that transform t
+     * of each root lands on, or -1 if it lands on none
+     */
+    private int[][] rootImages() {
+        Complex[] at = newton.roots();
+        int[][] image = new int[8][at.length];
+        double[] z = new double[2];
+        for (int t = 0; t < 8; t++) {
+            for (int k = 0; k < at.length; k++) {
+                z[0] = at[k].getReal();
+                z[1] = at[k].getImaginary();
+                Symmetry.apply(t, z);
+                newton.snap(z[0], z[1], z);
+                image[t][k] = newton.root(z[0], z[1]);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Finds the pixels that differ from a neighbour, then supersamples them.
+     * The edges are all found before any pixel changes.
+     */
+    private void antiAlias() {
+        boolean[] edge = new boolean[4 * width * width];
+        rows(y -> {
+            for (int x = -width; x < width; x++) {
+                int c = output.get(pixelIndex(x, y));
+                edge[rawIndex(x, y)]
+                        = x > -width && output.get(pixelIndex(x - 1, y)) != c
+                        || x < width - 1 && output.get(pixelIndex(x + 1, y)) != c
+                        || y > -width && output.get(pixelIndex(x, y - 1)) != c
+                        || y < width - 1 && output.get(pixelIndex(x, y + 1)) != c;
+            }
+        });
+        LongAdder count = new LongAdder();
+        rows(y -> {
+            double[] z = new double[2];
+            for (int x = -width; x < width && !cancelled; x++) {
+                if (edge[rawIndex(x, y)]) {
+                    output.set(pixelIndex(x, y), supersample(x, y, z));
+                    count.increment();
+                }
+            }
+        });
+        supersampled = count.sum();
+    }
+
+    /**
+     * @return The average colour of grid x grid jittered samples inside the
+     * pixel. The jitter only depends on the pixel, so renders repeat exactly.
+     */
+    private int supersample(int x, int y, double[] z) {
+        int r = 0, g = 0, b = 0;
+        for (int i = 0; i < grid; i++) {
+            for (int j = 0; j < grid; j++) {
+                int k = 2 * (i * grid + j);
+                double sx = x - 0.5 + (i + jitter(x, y, k)) / grid;
+                double sy = y - 0.5 + (j + jitter(x, y, k + 1)) / grid;
+                int n = sample(sx, sy, z);
+                int rgb = paint.paint(shade(n, z[0], z[1]), z[0], z[1]);
+                r += Rgb.red(rgb);
+                g += Rgb.green(rgb);
+                b += Rgb.blue(rgb);
+            }
+        }
+        int s = grid * grid;
+        return Rgb.pack((r + s / 2) / s, (g + s / 2) / s, (b + s / 2) / s);
+    }
+
+    /**
+     * @return A pseudo-random offset in [0, 1) for sample k of the pixel
+     */
+    private static double jitter(int x, int y, int k) {
+        long h = x * 0x9E3779B97F4A7C15L ^ y * 0xC2B2AE3D27D4EB4FL ^ k * 0x165667B19E3779F9L;
+        h = (h ^ (h >>> 31)) * 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 29;
+        return (h >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Repaints the last render from its iteration results without iterating
+     * again, then anti-aliases it if this fractal does. Later draws keep the
+     * new colouring and painter.
+     *
+     * @throws IllegalStateException If the last render kept no results; only
+     * non-LINEAR, incremental, symmetric, boundary-traced and progressive
+     * renders do
+     */
+    public void recolour(Colouring c, RgbPainter p) {
+        if (raw == null) {
+            throw new IllegalStateException("The last render kept no iteration results");
+        }
+        colouring = c;
+        paint = p;
+        colour();
+        if (grid > 1) {
+            antiAlias();
+        }
+    }
+
+    /**
+     * The colouring pass: works out the fractional counts and, for
+     * HISTOGRAM, the CDF of the counts, then paints every pixel from raw.
+     */
+    private void colour() {
+        IterationBuffer r = raw;
+        if (colouring != Colouring.LINEAR) {
+            if (r.smooth == null) {
+                r.smooth = new float[r.n.length];
+            }
+            rows(y -> {
+                for (int i = rawIndex(-width, y), end = i + 2 * width; i < end; i++) {
+                    r.smooth[i] = r.n[i] < 0 ? 0 : smooth(r.n[i], r.re[i], r.im[i]);
+                }
+            });
+        }
+        cdf = colouring == Colouring.HISTOGRAM ? histogram() : null;
+        rows(y -> {
+            for (int x = -width; x < width; x++) {
+                int i = rawIndex(x, y);
+                if (r.n[i] >= 0) {
+                    float v = colouring == Colouring.LINEAR ? (float) r.n[i] / depth
+                            : colouring == Colouring.SMOOTH ? r.smooth[i] / depth
+                            : cdf(r.n[i], r.smooth[i]);
+                    output.set(pixelIndex(x, y), paint.paint(v, r.re[i], r.im[i]));
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The value to paint an iteration result with
+     */
+    private float shade(int n, double re, double im) {
+        switch (colouring) {
+            case SMOOTH:
+                return smooth(n, re, im) / depth;
+            case HISTOGRAM:
+                return cdf(n, smooth(n, re, im));
+            default:
+                return (float) n / depth;
+        }
+    }
+
+    /**
+     * @return The normalised fractional count n + 1 - log_d(log|z| / log R)
+     * for a pixel that escaped with z = re + i im, in [n, n + 1]; just n for
+     * pixels that did not escape or renders that are not escape time
+     */
+    private float smooth(int n, double re, double im) {
+        if (n >= depth || trap != null || newton != null || inf_lim <= 1) {
+            return n;
+        }
+        int d = kernel != null && kernel.degree() >= 2 ? kernel.degree() : 2;
+        double m = Math.log(re * re + im * im) / (2 * Math.log(inf_lim));
+        double s = n + 1 - Math.log(m) / Math.log(d);
+        return s >= n ? (s <= n + 1 ? (float) s : n + 1) : n;
+    }
+
+    /**
+     * @return Where a fractional count s with whole part n falls in the
+     * histogram CDF
+     */
+    private float cdf(int n, float s) {
+        if (n >= depth) {
+            return 1;
+        }
+        float f = s - n;
+        return cdf[n] + (cdf[n + 1] - cdf[n]) * (f < 0 ? 0 : f > 1 ? 1 : f);
+    }
+
+    /**
+     * Counts the escaped pixels by iteration count, in parallel.
+     *
+     * @return cdf[k], the fraction that escaped in fewer than k iterations,
+     * for k from 0 to depth
+     */
+    private float[] histogram() {
+        int[] n = raw.n;
+        long[] h = onPool(() -> range(0, n.length).collect(
+                () -> new long[depth + 1],
+                (a, i) -> {
+                    if (n[i] >= 0) {
+                        a[Math.min(n[i], depth)]++;
+                    }
+                },
+                (a, b) -> {
+                    for (int k = 0; k <= depth; k++) {
+                        a[k] += b[k];
+                    }
+                }));
+        long escaped = 0;
+        for (int k = 0; k < depth; k++) {
+            escaped += h[k];
+        }
+        float[] c = new float[depth + 1];
+        long sum = 0;
+        for (int k = 0; k < depth; k++) {
+            c[k] = escaped == 0 ? 0 : (float) ((double) sum / escaped);
+            sum += h[k];
+        }
+        c[depth] = 1;
+        return c;
+    }
+
+    /**
+     * Runs row for every y, in parallel if this fractal renders in parallel.
+     */
+    private void rows(IntConsumer row) {
+        onPool(() -> {
+            range(-width, width).forEach(row);
+            return null;
+        });
+    }
+
+    /**
+     * @return The range as a stream, parallel if this fractal renders in
+     * parallel
+     */
+    private IntStream range(int from, int to) {
+        IntStream s = IntStream.range(from, to);
+        return pool == null && threads <= 1 ? s : s.parallel();
+    }
+
+    /**
+     * Runs task on this fractal's pool, so that parallel streams inside it
+     * use that pool.
+     */
+    private <T> T onPool(Supplier<T> task) {
+        if (pool == null && threads <= 1) {
+            return task.get();
+        }
+        ForkJoinPool fj = pool != null ? pool : new ForkJoinPool(threads);
+        try {
+            return fj.submit(() -> task.get()).join();
+        } finally {
+            if (fj != pool) {
+                fj.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Stops the current render as soon as possible. A cancelled render
+     * leaves the output partly painted and is not written by draw.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return The width and height of the image in pixels
+     */
+    public int getSize() {
+        return 2 * width;
+    }
+
+    Colouring getColouring() {
+        return colouring;
+    }
+
+    /**
+     * Hashes the size, depth, scale, offset, bailout and updater, so a file
+     * left by one render is not taken for another's. Updaters have no name
+     * that outlives the JVM, so they are hashed by where they send a few
+     * fixed points.
+     */
+    long fingerprint() {
+        long h = width;
+        h = 31 * h + depth;
+        h = 31 * h + Float.floatToIntBits(scale);
+        h = 31 * h + Float.floatToIntBits(inf_lim);
+        h = 31 * h + Double.doubleToLongBits(offset.getReal());
+        h = 31 * h + Double.doubleToLongBits(offset.getImaginary());
+        double[] z = new double[2];
+        for (double[] p : new double[][]{{0.5, 0.25}, {-0.75, 0.1}, {0.3, -0.6}}) {
+            if (newton != null) {
+                z[0] = p[0];
+                z[1] = p[1];
+                h = 31 * h + newton.iterate(p[0], p[1], z, depth);
+            } else {
+                Complex u = update.update(new Complex(p[0], p[1]), new Complex(p[1], p[0]));
+                z[0] = u.getReal();
+                z[1] = u.getImaginary();
+            }
+            h = 31 * h + Double.doubleToLongBits(z[0]);
+            h = 31 * h + Double.doubleToLongBits(z[1]);
+        }
+        return h;
+    }
+
+    /**
+     * Renders a horizontal band of the image without touching the output, so
+     * images far larger than memory can be produced a band at a time.
+     *
+     * @param row0 The first row of the band, counting from the top
+     * @param band Receives rows row0 onwards; must be getSize() pixels wide
+     * @throws IllegalStateException If the colouring is not LINEAR, which
+     * needs the whole image
+     */
+    public void drawBand(int row0, Framebuffer band) {
+        if (colouring != Colouring.LINEAR) {
+            throw new IllegalStateException(colouring + " colouring needs the whole image; drawBand is LINEAR only");
+        }
+        if (deep != null && orbit == null) {
+            orbit = deep.orbit(width, depth, inf_lim);
+        }
+        int rows = band.height();
+        if (pool == null && threads <= 1) {
+            for (int r = 0; r < rows; r++) {
+                drawRow(row0, r, band);
+            }
+            return;
+        }
+        ForkJoinPool fj = pool != null ? pool : new ForkJoinPool(threads);
+        try {
+            fj.submit(() -> IntStream.range(0, rows).parallel()
+                    .forEach(r -> drawRow(row0, r, band))).join();
+        } finally {
+            if (fj != pool) {
+                fj.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Renders row row0 + r of the image into row r of band.
+     */
+    private void drawRow(int row0, int r, Framebuffer band) {
+        //The inverse of the row pixelIndex puts each y on
+        int y = row0 + r == 0 ? -width : width - (row0 + r);
+        double[] z = new double[2];
         for (int x = -width; x < width; x++) {
-            for (int y = -width; y < width; y++) {
-                Pair p = trap != null ? getDistance(x, y) : iterateOn(x, y);
-                paintPixel(x, y, p.n, p.c);
+            float v = sample(x, y, z);
+            band.set(r * 2 * width + x + width, paint.paint((v / depth), z[0], z[1]));
+        }
+    }
+
+    /**
+     * @return The image, as painted by the last call to drawFractal, or null
+     * before the first one
+     */
+    public Framebuffer getOutput() {
+        return output;
+    }
+
+    /**
+     * @return The number of pixels the last boundary-traced render filled in
+     * without iterating them
+     */
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    /**
+     * @return The number of edge pixels the last render supersampled
+     */
+    public long getSupersampled() {
+        return supersampled;
+    }
+
+    /**
+     * @return The number of pixels the last draw copied from their
+     * symmetric partners instead of iterating
+     */
+    public long getMirrored() {
+        return mirrored;
+    }
+
+    /**
+     * @return The number of pixels the last incremental render copied from
+     * the previous frame
+     */
+    public long getReused() {
+        return reused;
+    }
+
+    /**
+     * @return The number of times a deep zoom render rebased a pixel onto
+     * the start of the reference orbit
+     */
+    public long getRebases() {
+        return orbit == null ? 0 : orbit.rebases();
+    }
+
+    /**
+     * @return How many of those rebases were caused by detected glitches
+     */
+    public long getGlitches() {
+        return orbit == null ? 0 : orbit.glitches();
+    }
+
+    /**
+     * Render every pixel with x0 &lt;= x &lt; x1 and y0 &lt;= y &lt; y1.
+     */
+    private void drawTile(int x0, int x1, int y0, int y1) {
+        Object event = RenderEvents.EVENTS.beginTile();
+        if (stats == null) {
+            paintTile(x0, x1, y0, y1);
+            RenderEvents.EVENTS.endTile(event, x0, x1, y0, y1, -1);
+            return;
+        }
+        long before = stats.running(), t = System.nanoTime();
+        paintTile(x0, x1, y0, y1);
+        long n = stats.running() - before;
+        stats.tile(x0, x1, y0, y1, n, System.nanoTime() - t);
+        RenderEvents.EVENTS.endTile(event, x0, x1, y0, y1, n);
+    }
+
+    private void paintTile(int x0, int x1, int y0, int y1) {
+        if (cache != null && (raw == null || reused == 0)) {
+            drawCached(x0, x1, y0, y1);
+            return;
+        }
+        if (lanes && (raw == null || reused == 0)) {
+            drawLanes(x0, x1, y0, y1);
+            return;
+        }
+        double[] z = new double[2];
+        for (int x = x0; x < x1; x++) {
+            for (int y = y0; y < y1; y++) {
+                if (raw == null) {
+                    int n = sample(x, y, z);
+                    paintPixel(x, y, n, z[0], z[1]);
+                    if (roots != null) {
+                        counts[rawIndex(x, y)] = n;
+                        roots[rawIndex(x, y)] = (byte) newton.root(z[0], z[1]);
+                    }
+                } else {
+                    iterate(x, y, z);
+                }
             }
         }
     }
 
-    private void writeTo(String name) {
-        try (BufferedWriter out = new BufferedWriter(
-                new OutputStreamWriter(
-                        new FileOutputStream(name + ".ppm")))) {
-                    String data = "P3\n" + (2 * width) + " " + (2 * width) + "\n255\n";
-                    out.write(data);
-                    for (int i = 0; i < output.length; ++i) {
-                        String colour = output[i];
-                        out.write(colour);
-                        if ((i + 1) % width == 0) {
-                            out.write("\n");
-                        }
+    /**
+     * Progressive render: one pass per sample spacing, from coarsest down to
+     * 1. Each pass only iterates the pixels that no earlier pass sampled.
+     */
+    private void drawProgressive() {
+        ForkJoinPool fj = pool != null ? pool
+                : threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            for (int step = coarsest; step >= 1 && !cancelled; step >>= 1) {
+                int s = step;
+                int columns = (2 * width + s - 1) / s;
+                if (fj == null) {
+                    for (int c = 0; c < columns; c++) {
+                        drawColumn(c * s - width, s);
                     }
-                } catch (Exception ex) {
-                    ex.printStackTrace(System.out);
-                    System.exit(-1);
-                    throw new RuntimeException(ex);
+                } else {
+                    fj.submit(() -> IntStream.range(0, columns).parallel()
+                            .forEach(c -> drawColumn(c * s - width, s))).join();
+                }
+                if (!cancelled) {
+                    listener.passComplete(this, s);
+                }
+            }
+        } finally {
+            if (fj != null && fj != pool) {
+                fj.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Samples every step-th pixel of column x, painting each over the
+     * step x step block below and to the right of it.
+     */
+    private void drawColumn(int x, int step) {
+        double[] z = new double[2];
+        for (int y = -width; y < width && !cancelled; y += step) {
+            int i = rawIndex(x, y);
+            if (raw.n[i] < 0) {
+                int n = sample(x, y, z);
+                raw.set(i, n, z[0], z[1]);
+            }
+            float v = raw.n[i];
+            int rgb = paint.paint((v / depth), raw.re[i], raw.im[i]);
+            for (int bx = x; bx < x + step && bx < width; bx++) {
+                for (int by = y; by < y + step && by < width; by++) {
+                    output.set(pixelIndex(bx, by), rgb);
                 }
-                if (USE_IMAGICK) {
-                    try {
-                        String srcfile = "\"" + name + ".ppm\"";
-                        String dstfile = "\"" + name + ".png\"";
-                        Runtime.getRuntime().exec("convert.exe " + srcfile
-                                + " " + dstfile);
-                    } catch (IOException ex) {
-                        throw new RuntimeException(ex);
+            }
+        }
+    }
+
+    /**
+     * drawTile through the tile cache: the tile is only iterated if the
+     * cache does not already hold it, and is painted either way.
+     */
+    private void drawCached(int x0, int x1, int y0, int y1) {
+        TileCache.Key key = new TileCache.Key(offset.getReal(), offset.getImaginary(),
+                scale, inf_lim, width, depth, kernel != null ? kernel : update,
+                warp, trapKey, start, interior, x0, x1, y0, y1);
+        int h = y1 - y0;
+        IterationBuffer t = cache.get(key);
+        if (t == null) {
+            t = new IterationBuffer((x1 - x0) * h);
+            double[] z = new double[2];
+            for (int x = x0; x < x1; x++) {
+                for (int y = y0; y < y1; y++) {
+                    int n = sample(x, y, z);
+                    t.set((x - x0) * h + y - y0, n, z[0], z[1]);
+                }
+            }
+            cache.put(key, t);
+        }
+        for (int x = x0; x < x1; x++) {
+            for (int y = y0; y < y1; y++) {
+                int i = (x - x0) * h + y - y0;
+                if (raw != null) {
+                    raw.set(rawIndex(x, y), t.n[i], t.re[i], t.im[i]);
+                }
+                paintPixel(x, y, t.n[i], t.re[i], t.im[i]);
+            }
+        }
+    }
+
+    /**
+     * Iterate a pixel into raw, unless it already holds a result, and paint it.
+     */
+    private void iterate(int x, int y, double[] z) {
+        int i = rawIndex(x, y);
+        if (raw.n[i] < 0) {
+            int n = sample(x, y, z);
+            raw.set(i, n, z[0], z[1]);
+        }
+        paintPixel(x, y, raw.n[i], raw.re[i], raw.im[i]);
+    }
+
+    /**
+     * @return Where pixel (x, y) lives in raw
+     */
+    private int rawIndex(int x, int y) {
+        return (y + width) * 2 * width + x + width;
+    }
+
+    /**
+     * Copies into raw every result of the previous frame whose point is
+     * within tolerance of one of this frame's pixels, then lets go of it.
+     */
+    private void reproject() {
+        Fractal p = previous;
+        previous = null;
+        reused = 0;
+        if (p == null || p.raw == null || !reusable(p)) {
+            return;
+        }
+        double f = scale / width, pf = p.scale / p.width;
+        for (int y = -width; y < width; y++) {
+            double py = (y * f + offset.getImaginary() - p.offset.getImaginary()) / pf;
+            long ry = Math.round(py);
+            if (Math.abs(py - ry) > tolerance || ry < -p.width || ry >= p.width) {
+                continue;
+            }
+            for (int x = -width; x < width; x++) {
+                double px = (x * f + offset.getReal() - p.offset.getReal()) / pf;
+                long rx = Math.round(px);
+                if (Math.abs(px - rx) > tolerance || rx < -p.width || rx >= p.width) {
+                    continue;
+                }
+                int j = p.rawIndex((int) rx, (int) ry);
+                if (p.raw.n[j] >= 0) {
+                    raw.set(rawIndex(x, y), p.raw.n[j], p.raw.re[j], p.raw.im[j]);
+                    reused++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Whether p iterates the same function as this, so that its
+     * results for a point are valid here
+     */
+    private boolean reusable(Fractal p) {
+        return p.depth == depth && p.inf_lim == inf_lim
+                && p.trap == null && trap == null
+                && p.deep == null && deep == null && p.newton == newton
+                && p.warp == warp && Objects.equals(p.start, start)
+                && (kernel != null ? p.kernel == kernel
+                        : p.kernel == null && p.update == update);
+    }
+
+    /**
+     * drawTile for Z^n + C, iterating runs of LaneKernel.LANES pixels down
+     * each column together.
+     */
+    private void drawLanes(int x0, int x1, int y0, int y1) {
+        LaneKernel k = LaneKernel.create();
+        double[] z = new double[2];
+        double f = scale / width;
+        double lim = (double) inf_lim * inf_lim;
+        int degree = kernel.degree();
+        for (int x = x0; x < x1; x++) {
+            for (int y = y0; y < y1; y += LaneKernel.LANES) {
+                int count = Math.min(LaneKernel.LANES, y1 - y);
+                for (int l = 0; l < count; l++) {
+                    k.cr[l] = x * f + offset.getReal();
+                    k.ci[l] = (y + l) * f + offset.getImaginary();
+                    seed(k.cr[l], k.ci[l], z);
+                    k.zr[l] = z[0];
+                    k.zi[l] = z[1];
+                }
+                k.escape(degree, count, depth, lim);
+                for (int l = 0; l < count; l++) {
+                    if (stats != null) {
+                        stats.count(k.n[l], depth);
+                    }
+                    if (raw != null) {
+                        raw.set(rawIndex(x, y + l), k.n[l], k.zr[l], k.zi[l]);
                     }
+                    paintPixel(x, y + l, k.n[l], k.zr[l], k.zi[l]);
                 }
+            }
+        }
+    }
+
+    /**
+     * Iterate a single pixel with whichever method applies.
+     *
+     * @param z receives the final complex value as {re, im}
+     * @return the number of iterations
+     */
+    private int sample(double x, double y, double[] z) {
+        int n = samplePoint(x, y, z);
+        if (stats != null) {
+            stats.count(n, depth);
+        }
+        return n;
+    }
+
+    private int samplePoint(double x, double y, double[] z) {
+        if (newton != null) {
+            double f = scale / width;
+            double cr = x * f + offset.getReal();
+            double ci = y * f + offset.getImaginary();
+            if (start == null && warp == NO_WARP) {
+                z[0] = cr;
+                z[1] = ci;
+            } else {
+                seed(cr, ci, z);
+            }
+            return newton.iterate(cr, ci, z, depth);
+        }
+        if (trap == null && orbit != null) {
+            double f = deep.scale() / width;
+            return orbit.iterate(x * f, y * f, depth, (double) inf_lim * inf_lim, z);
+        }
+        if (trap == null && kernel != null) {
+            return escape(x, y, z);
+        }
+        if (trap != null && kernel != null) {
+            return trapOn(x, y, z);
+        }
+        return trap != null
+                ? getDistance((float) x, (float) y, z)
+                : iterateOn((float) x, (float) y, z);
+    }
+
+    /**
+     * Iterates the outer border of the region {x0, x1, y0, y1} and returns
+     * the boundary trace for everything inside it.
+     */
+    private BoundaryTask traceBorder(int[] r) {
+        boolean parallel = pool != null || threads > 1;
+        int x0 = r[0], x1 = r[1] - 1, y0 = r[2], y1 = r[3] - 1;
+        BoundaryTask root = new BoundaryTask(parallel, x0, x1, y0, y1);
+        double[] z = new double[2];
+        for (int x = x0; x <= x1; x++) {
+            iterate(x, y0, z);
+            iterate(x, y1, z);
+        }
+        for (int y = y0 + 1; y < y1; y++) {
+            iterate(x0, y, z);
+            iterate(x1, y, z);
+        }
+        return root;
+    }
+
+    /**
+     * Mariani-Silver subdivision of the rectangle whose border runs along
+     * x0, x1, y0 and y1 inclusive. The border is already iterated when the
+     * task starts; each split iterates the dividing line before handing the
+     * halves on, so every pixel is written by exactly one task.
+     */
+    private class BoundaryTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean parallel;
+        private final int x0, x1, y0, y1;
+
+        BoundaryTask(boolean parallel, int x0, int x1, int y0, int y1) {
+            this.parallel = parallel;
+            this.x0 = x0;
+            this.x1 = x1;
+            this.y0 = y0;
+            this.y1 = y1;
+        }
+
+        /**
+         * @return The iteration count shared by the whole border, or -1
+         */
+        private int uniform() {
+            int n = raw.n[rawIndex(x0, y0)];
+            for (int x = x0; x <= x1; x++) {
+                if (raw.n[rawIndex(x, y0)] != n || raw.n[rawIndex(x, y1)] != n) {
+                    return -1;
+                }
+            }
+            for (int y = y0; y <= y1; y++) {
+                if (raw.n[rawIndex(x0, y)] != n || raw.n[rawIndex(x1, y)] != n) {
+                    return -1;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        protected void compute() {
+            if (x1 - x0 < 2 || y1 - y0 < 2) {
+                return;
+            }
+            int n = uniform();
+            if (n >= 0) {
+                int corner = rawIndex(x0, y0);
+                double re = raw.re[corner], im = raw.im[corner];
+                for (int x = x0 + 1; x < x1; x++) {
+                    for (int y = y0 + 1; y < y1; y++) {
+                        raw.set(rawIndex(x, y), n, re, im);
+                        paintPixel(x, y, n, re, im);
+                    }
+                }
+                skipped.add((long) (x1 - x0 - 1) * (y1 - y0 - 1));
+                return;
+            }
+            double[] z = new double[2];
+            if (x1 - x0 <= MIN_TRACE || y1 - y0 <= MIN_TRACE) {
+                for (int x = x0 + 1; x < x1; x++) {
+                    for (int y = y0 + 1; y < y1; y++) {
+                        iterate(x, y, z);
+                    }
+                }
+                return;
+            }
+            BoundaryTask a, b;
+            if (x1 - x0 >= y1 - y0) {
+                int mx = (x0 + x1) >> 1;
+                for (int y = y0 + 1; y < y1; y++) {
+                    iterate(mx, y, z);
+                }
+                a = new BoundaryTask(parallel, x0, mx, y0, y1);
+                b = new BoundaryTask(parallel, mx, x1, y0, y1);
+            } else {
+                int my = (y0 + y1) >> 1;
+                for (int x = x0 + 1; x < x1; x++) {
+                    iterate(x, my, z);
+                }
+                a = new BoundaryTask(parallel, x0, x1, y0, my);
+                b = new BoundaryTask(parallel, x0, x1, my, y1);
+            }
+            if (parallel) {
+                invokeAll(a, b);
+            } else {
+                a.compute();
+                b.compute();
+            }
+        }
+    }
+
+    /**
+     * Splits a region in half until it is no bigger than a tile. Interior
+     * tiles cost depth iterations per pixel and exterior ones almost nothing,
+     * so the halves are left for idle workers to steal rather than being
+     * divided up front. Splits fall on multiples of TILE from the corner, so
+     * the tiles are the same however the work is divided.
+     */
+    private class TileTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int x0, x1, y0, y1;
+
+        TileTask(int x0, int x1, int y0, int y1) {
+            this.x0 = x0;
+            this.x1 = x1;
+            this.y0 = y0;
+            this.y1 = y1;
+        }
+
+        @Override
+        protected void compute() {
+            if (cancelled) {
+                return;
+            }
+            if (x1 - x0 <= TILE && y1 - y0 <= TILE) {
+                drawTile(x0, x1, y0, y1);
+            } else if (x1 - x0 >= y1 - y0) {
+                int mx = x0 + (x1 - x0 + TILE - 1) / TILE / 2 * TILE;
+                invokeAll(new TileTask(x0, mx, y0, y1),
+                        new TileTask(mx, x1, y0, y1));
+            } else {
+                int my = y0 + (y1 - y0 + TILE - 1) / TILE / 2 * TILE;
+                invokeAll(new TileTask(x0, x1, y0, my),
+                        new TileTask(x0, x1, my, y1));
+            }
+        }
+    }
+
+    private void writeTo(String name) {
+        Object event = RenderEvents.EVENTS.beginWrite();
+        long t = stats == null ? 0 : System.nanoTime();
+        try {
+            sink.write(output, name);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        if (stats != null || event != null) {
+            String file = name + "." + sink.extension();
+            long size = new File(file).length();
+            if (stats != null) {
+                stats.written(file, size, System.nanoTime() - t);
+            }
+            RenderEvents.EVENTS.endWrite(event, file, size);
+        }
     }
 
     public void draw(String s) {
         drawFractal();
-        writeTo(s);
+        if (!cancelled) {
+            writeTo(s);
+        }
     }
 }
@@ -0,0 +1,33 @@
+package fractal;
+
+/**
+ * Holds the packed 0xAARRGGBB pixels of an image in row-major order.
+ * @author Shubham
+ */
+public interface Framebuffer {
+
+    int width();
+
+    int height();
+
+    int get(int index);
+
+    void set(int index, int rgb);
+
+    /**
+     * @return A framebuffer backed by an int[] on the heap
+     */
+    static Framebuffer heap(int width, int height){
+        return new HeapFramebuffer(width, height);
+    }
+
+    /**
+     * @return A framebuffer backed by direct memory outside the heap, for
+     * images too large to keep in it
+     * @throws IllegalArgumentException If the pixels need more than
+     * Integer.MAX_VALUE bytes
+     */
+    static Framebuffer direct(int width, int height){
+        return new DirectFramebuffer(width, height);
+    }
+}
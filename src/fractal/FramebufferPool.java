@@ -0,0 +1,65 @@
+package fractal;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * A bounded pool of framebuffers. Buffers released back to the pool are
+ * handed out again to later requests for the same size instead of being
+ * reallocated. At most capacity buffers exist at once; acquire blocks until
+ * one is released, which caps the memory a pipeline of frames can use.
+ * @author Shubham
+ */
+public final class FramebufferPool {
+
+    private final int capacity;
+    private final boolean offHeap;
+    private final ArrayDeque<Framebuffer> free = new ArrayDeque<>();
+    private int allocated = 0;
+
+    /**
+     * @param capacity The most framebuffers that may exist at once
+     * @param offHeap Whether to allocate direct rather than heap buffers
+     */
+    public FramebufferPool(int capacity, boolean offHeap) {
+        this.capacity = capacity;
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Takes a framebuffer of the given size, reusing a free one if possible.
+     * The contents are whatever the last user left in it.
+     * @throws InterruptedException If interrupted while waiting for a buffer
+     */
+    public synchronized Framebuffer acquire(int width, int height) throws InterruptedException {
+        while (true) {
+            for (Iterator<Framebuffer> it = free.iterator(); it.hasNext();) {
+                Framebuffer fb = it.next();
+                if (fb.width() == width && fb.height() == height) {
+                    it.remove();
+                    return fb;
+                }
+            }
+            if (allocated < capacity || !free.isEmpty()) {
+                if (allocated == capacity) {
+                    //Only buffers of other sizes are free; drop one of them
+                    free.poll();
+                } else {
+                    allocated++;
+                }
+                return offHeap
+                        ? Framebuffer.direct(width, height)
+                        : Framebuffer.heap(width, height);
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Returns a framebuffer taken from acquire to the pool.
+     */
+    public synchronized void release(Framebuffer fb) {
+        free.push(fb);
+        notifyAll();
+    }
+}
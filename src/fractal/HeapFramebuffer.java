@@ -0,0 +1,37 @@
+package fractal;
+
+/**
+ * Framebuffer backed by an int[].
+ * @author Shubham
+ */
+final class HeapFramebuffer implements Framebuffer {
+
+    private final int width, height;
+    private final int[] pixels;
+
+    HeapFramebuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width * height];
+    }
+
+    @Override
+    public int width() {
+        return width;
+    }
+
+    @Override
+    public int height() {
+        return height;
+    }
+
+    @Override
+    public int get(int index) {
+        return pixels[index];
+    }
+
+    @Override
+    public void set(int index, int rgb) {
+        pixels[index] = rgb;
+    }
+}
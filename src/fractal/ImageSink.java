@@ -0,0 +1,40 @@
+package fractal;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Encodes a rendered image. See ImageSinks for the built-in formats.
+ * @author Shubham
+ */
+public interface ImageSink {
+
+    /**
+     * @return The file extension for this format, without the dot
+     */
+    String extension();
+
+    /**
+     * Encodes the whole framebuffer to a channel.
+     * @param fb The image to encode
+     * @param out Where to write it; left open
+     * @throws IOException If the channel cannot be written
+     */
+    void write(Framebuffer fb, WritableByteChannel out) throws IOException;
+
+    /**
+     * Encodes the framebuffer to name + "." + extension().
+     * @param fb The image to encode
+     * @param name The file name, without extension
+     * @throws IOException If the file cannot be written
+     */
+    default void write(Framebuffer fb, String name) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(name + "." + extension()),
+                CREATE, WRITE, TRUNCATE_EXISTING)) {
+            write(fb, ch);
+        }
+    }
+}
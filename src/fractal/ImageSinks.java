@@ -0,0 +1,105 @@
+package fractal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Common image formats. All of them write straight from the framebuffer
+ * through a large direct buffer.
+ * @author Shubham
+ */
+public final class ImageSinks {
+
+    static final int BUFFER_SIZE = 1 << 20;
+
+    private ImageSinks(){}
+
+    /**
+     * @return Binary (P6) PPM
+     */
+    public static ImageSink ppm(){
+        return new ImageSink() {
+            @Override
+            public String extension() {
+                return "ppm";
+            }
+
+            @Override
+            public void write(Framebuffer fb, WritableByteChannel out) throws IOException {
+                ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                buf.put(header(fb.width(), fb.height()));
+                writeRgb(fb, out, buf);
+            }
+        };
+    }
+
+    /**
+     * @return Headerless 8-bit RGB triples, row by row
+     */
+    public static ImageSink raw(){
+        return new ImageSink() {
+            @Override
+            public String extension() {
+                return "rgb";
+            }
+
+            @Override
+            public void write(Framebuffer fb, WritableByteChannel out) throws IOException {
+                writeRgb(fb, out, ByteBuffer.allocateDirect(BUFFER_SIZE));
+            }
+        };
+    }
+
+    /**
+     * @return PNG at the default deflate level
+     */
+    public static ImageSink png(){
+        return new PngSink(6);
+    }
+
+    /**
+     * @param level Deflate level, 0 (store) to 9 (smallest)
+     * @return PNG at the given deflate level
+     */
+    public static ImageSink png(int level){
+        return new PngSink(level);
+    }
+
+    /**
+     * @return The P6 PPM header for an image of this size
+     */
+    static byte[] header(int width, int height){
+        return ("P6\n" + width + " " + height + "\n255\n")
+                .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Writes every pixel as three bytes, after whatever is already in buf.
+     */
+    static void writeRgb(Framebuffer fb, WritableByteChannel out, ByteBuffer buf) throws IOException {
+        int size = fb.width() * fb.height();
+        for (int i = 0; i < size; ++i) {
+            if (buf.remaining() < 3) {
+                drain(buf, out);
+            }
+            int rgb = fb.get(i);
+            buf.put((byte) (rgb >> 16));
+            buf.put((byte) (rgb >> 8));
+            buf.put((byte) rgb);
+        }
+        drain(buf, out);
+    }
+
+    /**
+     * Writes out everything in buf and clears it.
+     */
+    static void drain(ByteBuffer buf, WritableByteChannel out) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        buf.clear();
+    }
+}
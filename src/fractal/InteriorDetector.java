@@ -0,0 +1,88 @@
+package fractal;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stops the escape-time loop early for points that will never escape.
+ * For Z^2 + C Mandelbrot renders the main cardioid and the period-2 bulb are
+ * tested in closed form before iterating. For any updater, Brent's cycle
+ * detection compares Z against a saved value whose distance back along the
+ * orbit doubles each time, and gives up once the orbit comes back to within
+ * the tolerance.
+ * Interior points stop with the count set to depth, the same as if they had
+ * been iterated in full, but with whatever Z was reached at that point.
+ * @author Shubham
+ */
+public final class InteriorDetector {
+
+    private final boolean analytic;
+    private final double tolerance;
+    private final LongAdder analyticHits = new LongAdder();
+    private final LongAdder cycleHits = new LongAdder();
+
+    /**
+     * Analytic tests and cycle detection to within 1e-12.
+     */
+    public InteriorDetector() {
+        this(true, 1e-12);
+    }
+
+    /**
+     * @param analytic Whether to test the cardioid and bulb where possible
+     * @param tolerance How close Z must come back to count as a cycle; zero
+     * or less turns cycle detection off
+     */
+    public InteriorDetector(boolean analytic, double tolerance) {
+        this.analytic = analytic;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @return The number of points caught by the cardioid and bulb tests
+     */
+    public long getAnalyticHits() {
+        return analyticHits.sum();
+    }
+
+    /**
+     * @return The number of points caught by cycle detection
+     */
+    public long getCycleHits() {
+        return cycleHits.sum();
+    }
+
+    public void reset() {
+        analyticHits.reset();
+        cycleHits.reset();
+    }
+
+    boolean analytic() {
+        return analytic;
+    }
+
+    /**
+     * @return The squared cycle tolerance, or 0 if cycle detection is off
+     */
+    double tolerance2() {
+        return tolerance > 0 ? tolerance * tolerance : 0;
+    }
+
+    /**
+     * @return Whether C lies in the main cardioid or the period-2 bulb of the
+     * Mandelbrot set
+     */
+    boolean inMainBulbs(double re, double im) {
+        double x = re - 0.25, y2 = im * im;
+        double q = x * x + y2;
+        boolean in = q * (q + x) <= 0.25 * y2
+                || (re + 1.0) * (re + 1.0) + y2 <= 0.0625;
+        if (in) {
+            analyticHits.increment();
+        }
+        return in;
+    }
+
+    void cycle() {
+        cycleHits.increment();
+    }
+}
@@ -0,0 +1,27 @@
+package fractal;
+
+/**
+ * Raw per-pixel results of the iteration stage, kept as parallel arrays
+ * rather than one object per pixel. Holds the iteration count and the final
+ * complex value for each pixel, and the fractional count once a colouring
+ * pass has worked it out.
+ * @author Shubham
+ */
+final class IterationBuffer {
+
+    final int[] n;
+    final double[] re, im;
+    float[] smooth; //Fractional counts, null until needed
+
+    IterationBuffer(int size) {
+        this.n = new int[size];
+        this.re = new double[size];
+        this.im = new double[size];
+    }
+
+    void set(int i, int n, double re, double im) {
+        this.n[i] = n;
+        this.re[i] = re;
+        this.im[i] = im;
+    }
+}
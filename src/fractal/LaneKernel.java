@@ -0,0 +1,145 @@
+package fractal;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Escape-time kernel for Z^n + C that iterates a short run of pixels side by
+ * side, one lane per pixel, in the style of a SIMD kernel. Each lane's chain
+ * of multiplies is independent of the others, so the CPU can overlap them
+ * instead of waiting on one pixel's latency at a time. Lanes that escape are
+ * masked off and parked at zero; the loop ends once every lane has escaped
+ * or reached depth.
+ * The arithmetic is done in the same order as Updaters' scalar version, so
+ * results are bit for bit identical to it.
+ * One instance holds the lanes for one thread and is reused from run to run.
+ * <p>
+ * create() returns VectorLaneKernel instead where it is on the classpath and
+ * the JDK has jdk.incubator.vector; see ext/build.xml.
+ * @author Shubham
+ */
+class LaneKernel {
+
+    static final int LANES = 8;
+
+    private static final Constructor<? extends LaneKernel> VECTOR = vector();
+
+    final double[] cr = new double[LANES], ci = new double[LANES]; //C per lane
+    final double[] zr = new double[LANES], zi = new double[LANES]; //Z_0 in, final Z out
+    final int[] n = new int[LANES]; //Iteration counts out
+
+    private final double[] r = new double[LANES], i = new double[LANES];
+    private final double[] a = new double[LANES], b = new double[LANES];
+
+    /**
+     * @return A kernel for one thread, on the Vector API if it is available
+     * and the system property fractal.vector is not false
+     */
+    static LaneKernel create() {
+        if (VECTOR != null) {
+            try {
+                return VECTOR.newInstance();
+            } catch (ReflectiveOperationException ex) {
+                //vector() already built one, so this does not happen
+            }
+        }
+        return new LaneKernel();
+    }
+
+    /**
+     * @return Whether create() returns the Vector API kernel
+     */
+    static boolean vectorized() {
+        return VECTOR != null;
+    }
+
+    private static Constructor<? extends LaneKernel> vector() {
+        if (!Boolean.parseBoolean(System.getProperty("fractal.vector", "true"))) {
+            return null;
+        }
+        try {
+            Constructor<? extends LaneKernel> k = Class.forName("fractal.VectorLaneKernel")
+                    .asSubclass(LaneKernel.class).getDeclaredConstructor();
+            //Without the module this is where it fails
+            k.newInstance().escape(2, 1, 2, 4.0);
+            return k;
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Iterates the first count lanes of cr, ci, zr and zi.
+     * @param degree The exponent n &gt;= 2
+     * @param count How many lanes are in use, at most LANES
+     * @param depth Maximum number of iterations
+     * @param lim2 Squared bailout value
+     */
+    void escape(int degree, int count, int depth, double lim2) {
+        int live = 0;
+        for (int l = 0; l < count; l++) {
+            if (zr[l] * zr[l] + zi[l] * zi[l] < lim2) {
+                r[l] = zr[l];
+                i[l] = zi[l];
+                a[l] = cr[l];
+                b[l] = ci[l];
+                live |= 1 << l;
+            } else {
+                n[l] = 0;
+            }
+        }
+        for (int it = 1; live != 0; it++) {
+            if (it >= depth) {
+                for (int l = 0; l < count; l++) {
+                    if ((live & (1 << l)) != 0) {
+                        n[l] = it;
+                        zr[l] = r[l];
+                        zi[l] = i[l];
+                    }
+                }
+                return;
+            }
+            if (degree == 2) {
+                for (int l = 0; l < count; l++) {
+                    double x = r[l], y = i[l];
+                    r[l] = x * x - y * y + a[l];
+                    i[l] = 2.0 * x * y + b[l];
+                }
+            } else {
+                for (int l = 0; l < count; l++) {
+                    power(r, i, l, degree);
+                    r[l] += a[l];
+                    i[l] += b[l];
+                }
+            }
+            for (int l = 0; l < count; l++) {
+                if ((live & (1 << l)) != 0 && !(r[l] * r[l] + i[l] * i[l] < lim2)) {
+                    n[l] = it;
+                    zr[l] = r[l];
+                    zi[l] = i[l];
+                    r[l] = i[l] = a[l] = b[l] = 0;
+                    live &= ~(1 << l);
+                }
+            }
+        }
+    }
+
+    /**
+     * Same repeated squaring as Updaters.pow, for positive exponents.
+     */
+    private static void power(double[] r, double[] i, int l, int e) {
+        double br = r[l], bi = i[l];
+        double rr = 1.0, ri = 0.0;
+        for (; e > 0; e >>= 1) {
+            if ((e & 1) != 0) {
+                double t = rr * br - ri * bi;
+                ri = rr * bi + ri * br;
+                rr = t;
+            }
+            double t = br * br - bi * bi;
+            bi = 2.0 * br * bi;
+            br = t;
+        }
+        r[l] = rr;
+        i[l] = ri;
+    }
+}
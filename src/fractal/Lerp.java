@@ -49,15 +49,31 @@ public final class Lerp {
     }
 
     public static final String lerp(double frac, String from, String to) {
-        String[] frgb = from.trim().split(" ");
-        String[] trgb = to.trim().split(" ");
-        String[] drgb = new String[3];
-        for (int i = 0; i < 3; ++i) {
-            int f = Integer.parseInt(frgb[i]);
-            int t = Integer.parseInt(trgb[i]);
-            drgb[i] = "" + (lerp(frac, f, t));
-        }
-        return drgb[0] + " " + drgb[1] + " " + drgb[2];
+        return Rgb.format(lerpRgb(frac, Rgb.parse(from), Rgb.parse(to)));
+    }
+    
+    public static int lerpRgb(int f, int n, int from, int to){
+        return lerpRgb((double)f/n, from, to);
+    }
+
+    /**
+     * Interpolates packed pixels channel by channel.
+     */
+    public static int lerpRgb(double frac, int from, int to) {
+        return Rgb.pack(lerp(frac, Rgb.red(from), Rgb.red(to)),
+                lerp(frac, Rgb.green(from), Rgb.green(to)),
+                lerp(frac, Rgb.blue(from), Rgb.blue(to)));
+    }
+    
+    public static Palette lerp(int f, int n, Palette from, Palette to){
+        return lerp((double)f/n, from, to);
+    }
+
+    /**
+     * Interpolates palettes of the same depth and buckets colour by colour.
+     */
+    public static Palette lerp(double frac, Palette from, Palette to) {
+        return Palette.lerp(frac, from, to);
     }
     
 }
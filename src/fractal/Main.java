@@ -31,7 +31,7 @@ public class Main {
 
     public static void main(String[] args) {
             Fractal fr = new Fractal.Builder()
-                    .update((c,o) -> c.pow(3).exp().add(-0.59))
+                    .primitiveUpdate(Formula.compile("exp(z^3) - 0.59"))
                     .width(1000)
                     .depth(100)
                     .scale(0.5f)
@@ -49,6 +49,24 @@ public class Main {
         };
     }
 
+    private static void newton() {
+        Newton n = Newton.polynomial(1, 0, 0, -1);
+        new Fractal.Builder()
+                .newton(n)
+                .width(1000)
+                .depth(100)
+                .scale(2.0f)
+                .rgbPaint(n.palette(100))
+                .build()
+                .draw("newton");
+    }
+
+    private static void serve() throws java.io.IOException {
+        TileServer s = new TileServer(8080, 256, 256L << 20);
+        s.start();
+        System.out.println("Browse http://localhost:" + s.getPort() + "/");
+    }
+
     private static void movie() {
         double phi = (1.0 + Math.sqrt(5)) / 2.0;
         double phi2 = (1.0 + Math.sqrt(5)) / 2.0;
@@ -60,6 +78,7 @@ public class Main {
                 .scale((f, n) -> lerp(f, n, 50.0f, 2.5f))
                 .infLim(10E37f)
                 .paint((Float v, Complex c) -> blackWhitePaint(v, c))
+                .symmetry(Symmetry.dihedral(7))
                 .build();
         m.drawMovie();
         java.awt.Toolkit.getDefaultToolkit().beep();
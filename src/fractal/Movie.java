@@ -1,5 +1,14 @@
 package fractal;
 
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Function;
 import org.apache.commons.math3.complex.Complex;
 
@@ -17,7 +26,18 @@ public class Movie {
     private final Blend<Complex> offset;
     private final Blend<Function<Double, Double>> warp;
     private final Blend<Painter> paint;
+    private final Blend<RgbPainter> rgbPaint; //Replaces paint when not null
     private final Blend<Updater> frame;
+    private final Blend<PrimitiveUpdater> primitiveFrame; //Replaces frame when not null
+    private final ImageSink sink;
+    private final BigDecimal deepRe, deepIm; //Centre of a deep zoom, may be null
+    private final Blend<Double> zoom; //Scale of a deep zoom
+    private final int concurrentFrames; //Frames rendered at once, 1 renders serially
+    private final int queueDepth; //Rendered frames that may wait to be written
+    private final double reuse; //Pixel tolerance for reusing the last frame, negative to never reuse
+    private final RenderStats stats; //Receives metrics, may be null
+    private final VideoSink video; //Receives every frame in order, null for a file per frame
+    private final Symmetry symmetry; //Declared symmetry of every frame, null to detect
 
     public Movie(int nFrames, 
             Blend<Integer> width, Blend<Integer> depth, 
@@ -26,15 +46,33 @@ public class Movie {
             Blend<Painter> paint, 
             Blend<Complex> offset, 
             Blend<Function<Double, Double>> warp) {
-        this.nFrames = nFrames;
-        this.width = width;
-        this.depth = depth;
-        this.inf_lim = inf_lim;
-        this.scale = scale;
-        this.offset = offset;
-        this.warp = warp;
-        this.paint = paint;
-        this.frame = frame;
+        this(new Builder().nFrames(nFrames).width(width).depth(depth)
+                .scale(scale).infLim(inf_lim).frame(frame).paint(paint)
+                .offset(offset).warp(warp));
+    }
+
+    private Movie(Builder b) {
+        this.nFrames = b.nFrames;
+        this.width = b.width;
+        this.depth = b.depth;
+        this.inf_lim = b.inf_lim;
+        this.scale = b.scale;
+        this.offset = b.offset;
+        this.warp = b.warp;
+        this.paint = b.paint;
+        this.rgbPaint = b.rgbPaint;
+        this.stats = b.stats;
+        this.video = b.video;
+        this.symmetry = b.symmetry;
+        this.frame = b.frame;
+        this.primitiveFrame = b.primitiveFrame;
+        this.sink = b.sink;
+        this.deepRe = b.deepRe;
+        this.deepIm = b.deepIm;
+        this.zoom = b.zoom;
+        this.concurrentFrames = b.concurrentFrames;
+        this.queueDepth = b.queueDepth;
+        this.reuse = b.reuse;
     }
 
     public static class Builder {
@@ -45,7 +83,17 @@ public class Movie {
         private Blend<Complex> offset;
         private Blend<Function<Double, Double>> warp;
         private Blend<Painter> paint;
+        private Blend<RgbPainter> rgbPaint;
         private Blend<Updater> frame;
+        private Blend<PrimitiveUpdater> primitiveFrame;
+        private ImageSink sink;
+        private BigDecimal deepRe, deepIm;
+        private Blend<Double> zoom;
+        private int concurrentFrames, queueDepth;
+        private double reuse;
+        private RenderStats stats;
+        private VideoSink video;
+        private Symmetry symmetry;
         
         public Builder(){
             nFrames = 1;
@@ -53,17 +101,27 @@ public class Movie {
             inf_lim = (f, n) -> 5.0f;
             scale = (f, n) -> 1.0f;
             offset = (f, n) -> new Complex(0,0);
-            warp = (f, n) -> (a -> a);
+            warp = (f, n) -> Fractal.NO_WARP;
             paint = (f, n) -> ((v, c) -> {
                 int val = (int)(v*255.0);
                 return val + " " + val + " " + val;
             });
+            rgbPaint = (f, n) -> RgbPainter.valueOnly(Painters::blackWhitePaint);
             frame = (f, n) -> ((c,o) -> c.pow(2).add(o));
+            primitiveFrame = (f, n) -> Updaters.quadratic();
+            sink = ImageSinks.png();
+            deepRe = deepIm = null;
+            zoom = null;
+            concurrentFrames = 1;
+            queueDepth = 2;
+            reuse = -1;
+            stats = null;
+            video = null;
+            symmetry = null;
         }
         
         public Movie build(){
-            return new Movie(nFrames, width, depth, 
-                    scale, inf_lim, frame, paint, offset, warp);
+            return new Movie(this);
         }
         
         public Builder nFrames(int n){ nFrames = n; return this;}
@@ -73,8 +131,9 @@ public class Movie {
         public Builder scale(Blend<Float> s){scale = s; return this;}
         public Builder offset(Blend<Complex> o){offset = o; return this;}
         public Builder warp(Blend<Function<Double, Double>> w){warp = w; return this;}
-        public Builder paint(Blend<Painter> p){paint = p; return this;}
-        public Builder frame(Blend<Updater> f){frame = f; return this;}
+        public Builder paint(Blend<Painter> p){paint = p; rgbPaint = null; return this;}
+        public Builder rgbPaint(Blend<RgbPainter> p){rgbPaint = p; return this;}
+        public Builder frame(Blend<Updater> f){frame = f; primitiveFrame = null; return this;}
         
         public Builder width(int w){width = (f, n) -> w; return this;}
         public Builder depth(int d){depth = (f, n) -> d; return this;}
@@ -82,30 +141,285 @@ public class Movie {
         public Builder scale(float s){scale = (f, n) -> s; return this;}
         public Builder offset(Complex o){offset = (f, n) -> o; return this;}
         public Builder warp(Function<Double, Double> w){warp = (f, n) -> w; return this;}
-        public Builder paint(Painter p){paint = (f, n) -> p; return this;}
-        public Builder frame(Updater fr){frame = (f, n) -> fr; return this;}
+        public Builder paint(Painter p){paint = (f, n) -> p; rgbPaint = null; return this;}
+        public Builder rgbPaint(RgbPainter p){rgbPaint = (f, n) -> p; return this;}
+        
+        /**
+         * Fade from one palette to another over the movie. Both must have
+         * the same depth and buckets.
+         */
+        public Builder palette(Palette from, Palette to){
+            rgbPaint = (f, n) -> n == 0 ? from : Lerp.lerp(f, n, from, to);
+            return this;
+        }
+        public Builder frame(Updater fr){frame = (f, n) -> fr; primitiveFrame = null; return this;}
+
+        /**
+         * Draw frames with allocation-free updaters, which keep the fast
+         * paths of Fractal.Builder.primitiveUpdate. Replaces frame.
+         */
+        public Builder primitiveFrame(Blend<PrimitiveUpdater> p){primitiveFrame = p; return this;}
+        public Builder primitiveFrame(PrimitiveUpdater p){primitiveFrame = (f, n) -> p; return this;}
+        public Builder sink(ImageSink s){sink = s; return this;}
+        public Builder concurrentFrames(int c){concurrentFrames = c; return this;}
+        public Builder queueDepth(int q){queueDepth = q; return this;}
+        
+        /**
+         * Collect metrics for every frame into s, including the latency from
+         * starting each frame to having written it.
+         */
+        public Builder stats(RenderStats s){stats = s; return this;}
+        
+        /**
+         * Stream every frame, in order, into one video instead of writing
+         * ./frames/frameN files. drawMovie closes it when done. Progress
+         * goes to standard error, so the video may go to standard output.
+         */
+        public Builder video(VideoSink v){video = v; return this;}
+        
+        /**
+         * Declare the symmetry of every frame; it is only detected for
+         * primitiveFrame updaters. See Fractal.Builder.symmetry.
+         */
+        public Builder symmetry(Symmetry s){symmetry = s; return this;}
+        
+        /**
+         * Reuse each frame's iteration results in the next wherever the
+         * sample points line up to within tol pixels, e.g. for zooms by
+         * powers of two or pans by whole pixels. Only pays off when frame,
+         * depth, warp and infLim are constant; frames are then drawn one
+         * after the other, so this takes precedence over concurrentFrames.
+         */
+        public Builder incremental(double tol){reuse = tol; return this;}
+        
+        /**
+         * Zoom into the Mandelbrot set around a high precision centre, using
+         * DeepZoom in place of scale, offset and frame.
+         */
+        public Builder deepZoom(BigDecimal re, BigDecimal im, Blend<Double> z){
+            deepRe = re;
+            deepIm = im;
+            zoom = z;
+            return this;
+        }
         
     }
 
+    /**
+     * Draws one frame to its file, or appends it to the video.
+     */
     public void drawFrame(int frame_no){
-        System.out.println("Drawing: " + frame_no);
-        Fractal f = new Fractal.Builder()
+        log("Drawing: " + frame_no);
+        Object event = RenderEvents.EVENTS.beginFrame();
+        long t = System.nanoTime();
+        drawTo(frameFractal(frame_no, null), frame_no);
+        if (stats != null) {
+            stats.frame(frame_no, System.nanoTime() - t);
+        }
+        RenderEvents.EVENTS.endFrame(event, frame_no);
+    }
+
+    private void drawTo(Fractal f, int frame_no){
+        if (video == null) {
+            f.draw("./frames/frame" + frame_no);
+            return;
+        }
+        f.drawFractal();
+        try {
+            video.frame(f.getOutput());
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private void log(String s){
+        (video != null ? System.err : System.out).println(s);
+    }
+
+    private Fractal frameFractal(int frame_no, Framebuffer fb){
+        return frameBuilder(frame_no, fb).build();
+    }
+
+    private Fractal.Builder frameBuilder(int frame_no, Framebuffer fb){
+        Fractal.Builder b = new Fractal.Builder();
+        if (primitiveFrame != null) {
+            b.primitiveUpdate(primitiveFrame.blend(frame_no, nFrames-1));
+        } else {
+            b.update(frame.blend(frame_no, nFrames-1));
+        }
+        return b
                 .width(width.blend(frame_no, nFrames-1))
                 .depth(depth.blend(frame_no, nFrames-1))
                 .scale(scale.blend(frame_no, nFrames-1))
                 .infLim(inf_lim.blend(frame_no, nFrames-1))
                 .offset(offset.blend(frame_no, nFrames-1))
-                .update(frame.blend(frame_no, nFrames-1))
-                .paint(paint.blend(frame_no, nFrames-1))
+                .rgbPaint(rgbPaint != null ? rgbPaint.blend(frame_no, nFrames-1)
+                        : RgbPainter.of(paint.blend(frame_no, nFrames-1)))
                 .warp(warp.blend(frame_no, nFrames-1))
-                .build();
-        f.draw("./frames/frame" + frame_no);
+                .sink(sink)
+                .deepZoom(deepRe == null ? null : new DeepZoom(deepRe, deepIm,
+                        zoom.blend(frame_no, nFrames-1)))
+                .framebuffer(fb)
+                .stats(stats)
+                .symmetry(symmetry);
     }
 
     public void drawMovie(){
+        try {
+            if (video != null) {
+                try {
+                    video.start(nFrames);
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+            if (reuse >= 0) {
+                drawIncremental();
+            } else if (concurrentFrames > 1) {
+                drawPipelined();
+            } else {
+                for (int i = 0; i < nFrames; i++) {
+                    drawFrame(i);
+                    log("Drew frame: " + i);
+                }
+            }
+        } finally {
+            if (video != null) {
+                try {
+                    video.close();
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws frames in order, handing each one the last so that points they
+     * share are only iterated once.
+     */
+    private void drawIncremental(){
+        Fractal prev = null;
         for (int i = 0; i < nFrames; i++) {
-            drawFrame(i);
-            System.out.println("Drew frame: " + i);
+            log("Drawing: " + i);
+            Object event = RenderEvents.EVENTS.beginFrame();
+            long t = System.nanoTime();
+            Fractal f = frameBuilder(i, null).incremental(prev, reuse).build();
+            drawTo(f, i);
+            if (stats != null) {
+                stats.frame(i, System.nanoTime() - t);
+            }
+            RenderEvents.EVENTS.endFrame(event, i);
+            log("Drew frame: " + i + " (reused " + f.getReused() + " pixels)");
+            prev = f;
+        }
+    }
+
+    /**
+     * A rendered frame waiting to be written. A null framebuffer means a
+     * render failed.
+     */
+    private static class Rendered {
+
+        public final int frame_no;
+        public final Framebuffer fb;
+        public final Throwable error;
+        public final long started; //System.nanoTime() when rendering began
+        public final Object event; //Frame event from RenderEvents, may be null
+
+        public Rendered(int frame_no, Framebuffer fb, Throwable error, long started, Object event) {
+            this.frame_no = frame_no;
+            this.fb = fb;
+            this.error = error;
+            this.started = started;
+            this.event = event;
+        }
+    }
+
+    /**
+     * Renders concurrentFrames frames at a time while this thread encodes
+     * finished ones. Framebuffers come from a pool sized so that every
+     * renderer, every queued frame and the one being written can each hold
+     * one, so memory stays capped however long the movie is.
+     * <p>
+     * This thread hands frames out in order, each with its framebuffer, and
+     * never more than the pool holds beyond the next frame to write. The
+     * frame it waits for therefore always has a framebuffer, and frames
+     * that finish early wait in a reorder buffer so they are written in
+     * order.
+     */
+    private void drawPipelined(){
+        int capacity = concurrentFrames + queueDepth + 1;
+        FramebufferPool buffers = new FramebufferPool(capacity, false);
+        BlockingQueue<Rendered> done = new ArrayBlockingQueue<>(queueDepth);
+        ExecutorService renderers = Executors.newFixedThreadPool(concurrentFrames);
+        try {
+            Map<Integer, Rendered> pending = new HashMap<>();
+            int submitted = 0;
+            for (int next = 0; next < nFrames; ) {
+                //At most capacity frames hold buffers, so this never blocks
+                for (; submitted < nFrames && submitted < next + capacity; submitted++) {
+                    int frame_no = submitted;
+                    int w = 2 * width.blend(frame_no, nFrames-1);
+                    Framebuffer fb = buffers.acquire(w, w);
+                    renderers.execute(() -> render(frame_no, fb, done));
+                }
+                Rendered r = done.take();
+                if (r.fb == null) {
+                    throw new RuntimeException("Frame " + r.frame_no, r.error);
+                }
+                pending.put(r.frame_no, r);
+                for (Rendered p; (p = pending.remove(next)) != null; next++) {
+                    write(p);
+                    buffers.release(p.fb);
+                    log("Drew frame: " + p.frame_no);
+                }
+            }
+        } catch (InterruptedException | IOException ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            renderers.shutdownNow();
+        }
+    }
+
+    private void render(int frame_no, Framebuffer fb, BlockingQueue<Rendered> done){
+        Rendered r;
+        Object event = RenderEvents.EVENTS.beginFrame();
+        long started = System.nanoTime();
+        try {
+            log("Drawing: " + frame_no);
+            frameFractal(frame_no, fb).drawFractal();
+            r = new Rendered(frame_no, fb, null, started, event);
+        } catch (Throwable t) {
+            r = new Rendered(frame_no, null, t, started, event);
+        }
+        try {
+            done.put(r);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(Rendered r) throws IOException {
+        long t = System.nanoTime();
+        if (video != null) {
+            video.frame(r.fb);
+        } else {
+            Object event = RenderEvents.EVENTS.beginWrite();
+            String name = "./frames/frame" + r.frame_no;
+            sink.write(r.fb, name);
+            if (stats != null || event != null) {
+                String file = name + "." + sink.extension();
+                long size = new File(file).length();
+                if (stats != null) {
+                    stats.written(file, size, System.nanoTime() - t);
+                }
+                RenderEvents.EVENTS.endWrite(event, file, size);
+            }
+        }
+        if (stats != null) {
+            stats.frame(r.frame_no, System.nanoTime() - r.started);
         }
+        RenderEvents.EVENTS.endFrame(r.event, r.frame_no);
     }
 }
@@ -0,0 +1,314 @@
+package fractal;
+
+import java.awt.Color;
+import org.apache.commons.math3.complex.Complex;
+
+/**
+ * Root-finding render for Newton fractals. Each pixel's start value is
+ * iterated with Z - f(Z) / f'(Z) on primitive doubles until a step is shorter
+ * than the tolerance, so pixels stop as soon as they converge rather than
+ * running to the full depth.
+ * <p>
+ * The iteration count is the pixel's value and Z is snapped onto the root it
+ * converged to, so root(re, im) recovers the root's index. newtonPaint,
+ * angular palettes and palette() all colour by root this way. Pixels that do
+ * not converge within depth keep their last Z.
+ * @author Shubham
+ */
+public final class Newton {
+
+    private static final double SNAP = 1e-6; //Squared distance within which Z snaps to a root
+
+    private final double[] ar, ai; //Polynomial coefficients, highest first; null for f and df
+    private final PrimitiveUpdater f, df;
+    private final double[] rr, ri; //The roots
+    private final double tolerance;
+
+    private Newton(double[] ar, double[] ai, PrimitiveUpdater f, PrimitiveUpdater df,
+            double[] rr, double[] ri, double tolerance) {
+        this.ar = ar;
+        this.ai = ai;
+        this.f = f;
+        this.df = df;
+        this.rr = rr;
+        this.ri = ri;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @param coefficients Real coefficients, highest power first, e.g.
+     * 1, 0, 0, -1 for Z^3 - 1
+     * @return Newton's method for the polynomial
+     */
+    public static Newton polynomial(double... coefficients){
+        Complex[] c = new Complex[coefficients.length];
+        for (int k = 0; k < c.length; ++k) {
+            c[k] = new Complex(coefficients[k], 0);
+        }
+        return polynomial(c);
+    }
+
+    /**
+     * @param coefficients Coefficients, highest power first
+     * @return Newton's method for the polynomial, with its roots found by
+     * Durand-Kerner iteration
+     */
+    public static Newton polynomial(Complex... coefficients){
+        int lead = 0;
+        while (lead < coefficients.length && coefficients[lead].abs() == 0) {
+            lead++;
+        }
+        int degree = coefficients.length - lead - 1;
+        if (degree < 1) {
+            throw new IllegalArgumentException("Polynomial must have degree at least 1");
+        }
+        double[] ar = new double[degree + 1], ai = new double[degree + 1];
+        for (int k = 0; k <= degree; ++k) {
+            ar[k] = coefficients[lead + k].getReal();
+            ai[k] = coefficients[lead + k].getImaginary();
+        }
+        double[] rr = new double[degree], ri = new double[degree];
+        durandKerner(ar, ai, rr, ri);
+        return new Newton(ar, ai, null, null, rr, ri, 1e-9);
+    }
+
+    /**
+     * @param f Computes f(Z) in place; also given the pixel's point
+     * @param df Computes f'(Z) in place; also given the pixel's point
+     * @param roots Roots to snap to and number by, may be empty
+     * @return Newton's method for f
+     */
+    public static Newton of(PrimitiveUpdater f, PrimitiveUpdater df, Complex... roots){
+        double[] rr = new double[roots.length], ri = new double[roots.length];
+        for (int k = 0; k < roots.length; ++k) {
+            rr[k] = roots[k].getReal();
+            ri[k] = roots[k].getImaginary();
+        }
+        return new Newton(null, null, f, df, rr, ri, 1e-9);
+    }
+
+    /**
+     * @param t Stop once a step is shorter than this; 1e-9 by default
+     * @return A copy with the new tolerance
+     */
+    public Newton tolerance(double t){
+        return new Newton(ar, ai, f, df, rr, ri, t);
+    }
+
+    public Complex[] roots(){
+        Complex[] c = new Complex[rr.length];
+        for (int k = 0; k < c.length; ++k) {
+            c[k] = new Complex(rr[k], ri[k]);
+        }
+        return c;
+    }
+
+    /**
+     * @return The symmetry of the polynomial's fractal: the mirror if its
+     * coefficients are real up to a common factor, and rotation by w if
+     * every power with a nonzero coefficient is the same modulo the order
+     * of w. NONE for Newton.of.
+     */
+    Symmetry symmetry(){
+        if (ar == null) {
+            return Symmetry.NONE;
+        }
+        boolean mirror = true;
+        int degree = ar.length - 1, first = -1, order = 0;
+        for (int k = 0; k <= degree; ++k) {
+            mirror &= ai[k] * ar[0] - ar[k] * ai[0] == 0;
+            if (ar[k] != 0 || ai[k] != 0) {
+                if (first < 0) {
+                    first = k;
+                }
+                order = gcd(order, k - first);
+            }
+        }
+        //A single term is symmetric under every rotation
+        order = order == 0 ? 4 : order;
+        return mirror ? Symmetry.dihedral(order) : Symmetry.rotation(order);
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+
+    /**
+     * @return The index of the root at exactly re + i im, as left by a
+     * converged pixel, or -1
+     */
+    public int root(double re, double im){
+        for (int k = 0; k < rr.length; ++k) {
+            if (rr[k] == re && ri[k] == im) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return palette(depth, colours) with hues evenly spaced around the
+     * colour wheel
+     */
+    public RgbPainter palette(int depth){
+        int[] colours = new int[rr.length];
+        for (int k = 0; k < colours.length; ++k) {
+            colours[k] = Color.HSBtoRGB((float) k / colours.length, 0.8f, 1f);
+        }
+        return palette(depth, colours);
+    }
+
+    /**
+     * A lookup table by root and iteration count: each root's colour, darker
+     * the longer the pixel took to converge. Pixels that did not converge
+     * are black.
+     * @param depth The depth of the fractals to paint
+     * @param colours One packed colour per root
+     */
+    public RgbPainter palette(int depth, int... colours){
+        int[] lut = new int[colours.length * (depth + 1)];
+        for (int k = 0; k < colours.length; ++k) {
+            int c = colours[k];
+            for (int n = 0; n <= depth; ++n) {
+                double s = 1.0 - (double) n / depth;
+                lut[k * (depth + 1) + n] = Rgb.pack((int) (Rgb.red(c) * s),
+                        (int) (Rgb.green(c) * s), (int) (Rgb.blue(c) * s));
+            }
+        }
+        int black = Rgb.pack(0, 0, 0);
+        return (v, re, im) -> {
+            int k = root(re, im);
+            if (k < 0 || k >= colours.length) {
+                return black;
+            }
+            int n = (int) (v * depth + 0.5f);
+            return lut[k * (depth + 1) + (n < 0 ? 0 : n > depth ? depth : n)];
+        };
+    }
+
+    /**
+     * Runs Newton's method from z.
+     * @param cr Real part of the pixel's point
+     * @param ci Imaginary part of the pixel's point
+     * @param z Z_0 as {re, im}; receives the root, or the last Z
+     * @return Iterations until convergence, or depth
+     */
+    int iterate(double cr, double ci, double[] z, int depth) {
+        double tol2 = tolerance * tolerance;
+        double zr = z[0], zi = z[1];
+        double[] fz = ar == null ? new double[2] : null;
+        double[] dz = ar == null ? new double[2] : null;
+        for (int n = 1; n <= depth; ++n) {
+            double fr, fi, dr, di;
+            if (ar != null) {
+                //Horner's rule for p and p' together
+                fr = ar[0];
+                fi = ai[0];
+                dr = 0;
+                di = 0;
+                for (int k = 1; k < ar.length; ++k) {
+                    double t = dr * zr - di * zi + fr;
+                    di = dr * zi + di * zr + fi;
+                    dr = t;
+                    t = fr * zr - fi * zi + ar[k];
+                    fi = fr * zi + fi * zr + ai[k];
+                    fr = t;
+                }
+            } else {
+                fz[0] = dz[0] = zr;
+                fz[1] = dz[1] = zi;
+                f.update(fz, cr, ci);
+                df.update(dz, cr, ci);
+                fr = fz[0];
+                fi = fz[1];
+                dr = dz[0];
+                di = dz[1];
+            }
+            double d = dr * dr + di * di;
+            double sr = (fr * dr + fi * di) / d, si = (fi * dr - fr * di) / d;
+            zr -= sr;
+            zi -= si;
+            double s = sr * sr + si * si;
+            if (!(s >= tol2)) {
+                if (s != s) {
+                    //f' vanished
+                    break;
+                }
+                snap(zr, zi, z);
+                return n;
+            }
+        }
+        z[0] = zr;
+        z[1] = zi;
+        return depth;
+    }
+
+    /**
+     * Moves z onto the nearest root if one is close enough.
+     */
+    void snap(double zr, double zi, double[] z) {
+        int best = -1;
+        double bd = SNAP;
+        for (int k = 0; k < rr.length; ++k) {
+            double dr = zr - rr[k], di = zi - ri[k];
+            double d = dr * dr + di * di;
+            if (d < bd) {
+                bd = d;
+                best = k;
+            }
+        }
+        z[0] = best < 0 ? zr : rr[best];
+        z[1] = best < 0 ? zi : ri[best];
+    }
+
+    /**
+     * Finds all roots of the polynomial at once by Durand-Kerner iteration.
+     */
+    private static void durandKerner(double[] ar, double[] ai, double[] rr, double[] ri) {
+        int degree = rr.length;
+        //Make the polynomial monic
+        double l = ar[0] * ar[0] + ai[0] * ai[0];
+        double[] mr = new double[degree + 1], mi = new double[degree + 1];
+        for (int k = 0; k <= degree; ++k) {
+            mr[k] = (ar[k] * ar[0] + ai[k] * ai[0]) / l;
+            mi[k] = (ai[k] * ar[0] - ar[k] * ai[0]) / l;
+        }
+        //Start from powers of 0.4 + 0.9i, which is neither real nor a root of unity
+        double pr = 1, pi = 0;
+        for (int k = 0; k < degree; ++k) {
+            rr[k] = pr;
+            ri[k] = pi;
+            double t = pr * 0.4 - pi * 0.9;
+            pi = pr * 0.9 + pi * 0.4;
+            pr = t;
+        }
+        for (int it = 0; it < 1000; ++it) {
+            double moved = 0;
+            for (int k = 0; k < degree; ++k) {
+                double vr = mr[0], vi = mi[0];
+                for (int j = 1; j <= degree; ++j) {
+                    double t = vr * rr[k] - vi * ri[k] + mr[j];
+                    vi = vr * ri[k] + vi * rr[k] + mi[j];
+                    vr = t;
+                }
+                double qr = 1, qi = 0;
+                for (int j = 0; j < degree; ++j) {
+                    if (j != k) {
+                        double er = rr[k] - rr[j], ei = ri[k] - ri[j];
+                        double t = qr * er - qi * ei;
+                        qi = qr * ei + qi * er;
+                        qr = t;
+                    }
+                }
+                double q = qr * qr + qi * qi;
+                double sr = (vr * qr + vi * qi) / q, si = (vi * qr - vr * qi) / q;
+                rr[k] -= sr;
+                ri[k] -= si;
+                moved = Math.max(moved, sr * sr + si * si);
+            }
+            if (moved < 1e-30) {
+                break;
+            }
+        }
+    }
+}
@@ -3,7 +3,7 @@ package fractal;
 import org.apache.commons.math3.complex.Complex;
 
 /**
- * Given shading information for a pixel (cf. the Pair inner class in Fractal),
+ * Given shading information for a pixel (cf. IterationBuffer),
  * generates a string containing RGB pixel values.
  * @author Shubham
  */
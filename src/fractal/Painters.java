@@ -1,10 +1,10 @@
 package fractal;
 
-import java.util.Random;
 import org.apache.commons.math3.complex.Complex;
 
 /**
- * Common paint methods
+ * Common paint methods. Each one comes in a String version for Painter and a
+ * primitive version for RgbPainter.
  * @author Shubham
  */
 public final class Painters {
@@ -12,34 +12,67 @@ public final class Painters {
     private Painters(){}
 
     public static String blackWhitePaint(Float v, Complex c){
+        return Rgb.format(blackWhitePaint(v, c.getReal(), c.getImaginary()));
+    }
+
+    public static int blackWhitePaint(float v, double re, double im){
         int bw = (int)(v*255.0);
-        return bw + " " + bw + " " + bw;
+        return Rgb.pack(bw, bw, bw);
     }
 
     public static String whiteBlackPaint(Float v, Complex c){
+        return Rgb.format(whiteBlackPaint(v, c.getReal(), c.getImaginary()));
+    }
+
+    public static int whiteBlackPaint(float v, double re, double im){
         int bw = (int)((1.0-v)*255.0);
-        return bw + " " + bw + " " + bw;
+        return Rgb.pack(bw, bw, bw);
     }
 
     public static String blueWhitePaint(Float v, Complex c){
+        return Rgb.format(blueWhitePaint(v, c.getReal(), c.getImaginary()));
+    }
+
+    public static int blueWhitePaint(float v, double re, double im){
         int bw = (int)((1.0 - v)*255.0);
-        return bw + " " + bw + " " + 255;
+        return Rgb.pack(bw, bw, 255);
     }
     
     public static String randomPaint(Float v, Complex c){
-        Random prng = new Random((int) (v * 256.0));
-        return prng.nextInt(256) + " " + prng.nextInt(256) + " " + prng.nextInt(256);
+        return Rgb.format(randomPaint(v, c.getReal(), c.getImaginary()));
+    }
+
+    public static int randomPaint(float v, double re, double im){
+        return randomPaint(v, re, im, 0);
     }
     
     public static String randomPaint(Float v, Complex c, int n){
-        Random prng = new Random((int) (v * 256.0));
-        return ((prng.nextInt(256) + n) % 256) + " " + ((prng.nextInt(256) + n) % 256) + " " + ((prng.nextInt(256) + n) % 256);
+        return Rgb.format(randomPaint(v, c.getReal(), c.getImaginary(), n));
+    }
+
+    /**
+     * Same colours as seeding a java.util.Random with (int)(v * 256) and
+     * drawing three nextInt(256), without creating the Random.
+     */
+    public static int randomPaint(float v, double re, double im, int n){
+        long seed = ((int) (v * 256.0) ^ 0x5DEECE66DL) & ((1L << 48) - 1);
+        seed = (seed * 0x5DEECE66DL + 0xBL) & ((1L << 48) - 1);
+        int r = (int) (seed >>> 40);
+        seed = (seed * 0x5DEECE66DL + 0xBL) & ((1L << 48) - 1);
+        int g = (int) (seed >>> 40);
+        seed = (seed * 0x5DEECE66DL + 0xBL) & ((1L << 48) - 1);
+        int b = (int) (seed >>> 40);
+        return Rgb.pack((r + n) % 256, (g + n) % 256, (b + n) % 256);
     }
 
     //For painting newton fractals
     public static String newtonPaint(Float v, Complex c){
+        return Rgb.format(newtonPaint(v, c.getReal(), c.getImaginary()));
+    }
+
+    public static int newtonPaint(float v, double re, double im){
         int r,g,b;
-        double ang = c.getArgument();
+        double ang = Math.atan2(im, re);
         double a1 = Math.PI, a2 = +Math.PI / 3.0, a3 = -Math.PI / 3.0;
         if (-Math.PI < ang && ang <= a3) {
             //red-green
@@ -63,6 +96,6 @@ public final class Painters {
             g = (int) (v * 255.0);
             b = (int) ((b_a / (b_a + r_a)) * 255.0);
         }
-        return r + " " + g + " " + b;
+        return Rgb.pack(r, g, b);
     }
 }
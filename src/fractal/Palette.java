@@ -0,0 +1,95 @@
+package fractal;
+
+/**
+ * A painter backed by a lookup table of precomputed colours, one per
+ * iteration count. Painting a pixel is then an array lookup.
+ * <p>
+ * Plain palettes assume the painter only depends on the value, like
+ * blackWhitePaint or randomPaint. Angular palettes also bucket the argument
+ * of the final z, for painters like newtonPaint.
+ * @author Shubham
+ */
+public final class Palette implements RgbPainter {
+
+    private final int depth; //Largest iteration count in the table
+    private final int buckets; //Angle buckets per count, 1 ignores the angle
+    final int[] lut; //Colours by count, then by angle bucket
+
+    private Palette(int depth, int buckets, int[] lut) {
+        this.depth = depth;
+        this.buckets = buckets;
+        this.lut = lut;
+    }
+
+    /**
+     * @param p The painter to tabulate, which must ignore re and im
+     * @param depth The depth of the fractals to paint
+     * @return A palette painting like p
+     */
+    public static Palette of(RgbPainter p, int depth){
+        int[] lut = new int[depth + 1];
+        for (int n = 0; n <= depth; ++n) {
+            lut[n] = p.paint((float) n / depth, 0, 0);
+        }
+        return new Palette(depth, 1, lut);
+    }
+
+    /**
+     * @param p The painter to tabulate, which may only depend on the value
+     * and the argument of re + i im
+     * @param depth The depth of the fractals to paint
+     * @param buckets How many angles to tabulate per value. For newtonPaint
+     * a multiple of 6 keeps its sector edges on bucket edges.
+     * @return A palette painting like p, to within 2&pi; / buckets
+     */
+    public static Palette angular(RgbPainter p, int depth, int buckets){
+        int[] lut = new int[(depth + 1) * buckets];
+        for (int b = 0; b < buckets; ++b) {
+            double ang = -Math.PI + (b + 0.5) * 2.0 * Math.PI / buckets;
+            double re = Math.cos(ang), im = Math.sin(ang);
+            for (int n = 0; n <= depth; ++n) {
+                lut[n * buckets + b] = p.paint((float) n / depth, re, im);
+            }
+        }
+        return new Palette(depth, buckets, lut);
+    }
+
+    public int getDepth(){
+        return depth;
+    }
+
+    public int getBuckets(){
+        return buckets;
+    }
+
+    @Override
+    public boolean valueOnly(){
+        return buckets == 1;
+    }
+
+    @Override
+    public int paint(float value, double re, double im){
+        int n = (int) (value * depth + 0.5f);
+        n = n < 0 ? 0 : n > depth ? depth : n;
+        if (buckets == 1) {
+            return lut[n];
+        }
+        int b = (int) ((Math.atan2(im, re) + Math.PI) * buckets / (2.0 * Math.PI));
+        return lut[n * buckets + (b < buckets ? b : buckets - 1)];
+    }
+
+    /**
+     * Interpolates two palettes of the same shape colour by colour.
+     * @param frac 0 for from, 1 for to
+     */
+    static Palette lerp(double frac, Palette from, Palette to){
+        if (from.depth != to.depth || from.buckets != to.buckets) {
+            throw new IllegalArgumentException("Palettes differ in depth or buckets");
+        }
+        int[] lut = new int[from.lut.length];
+        for (int i = 0; i < lut.length; ++i) {
+            lut[i] = Lerp.lerpRgb(frac, from.lut[i], to.lut[i]);
+        }
+        return new Palette(from.depth, from.buckets, lut);
+    }
+}
@@ -0,0 +1,134 @@
+package fractal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * In-process PNG encoder for 8-bit RGB images.
+ * @author Shubham
+ */
+final class PngSink implements ImageSink {
+
+    static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    /**
+     * Receives the deflated image data a piece at a time.
+     */
+    @FunctionalInterface
+    interface Chunks {
+        void write(byte[] data, int off, int len) throws IOException;
+    }
+
+    private final int level;
+
+    PngSink(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public String extension() {
+        return "png";
+    }
+
+    @Override
+    public void write(Framebuffer fb, WritableByteChannel out) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocateDirect(ImageSinks.BUFFER_SIZE);
+        buf.put(SIGNATURE);
+        writeChunk(buf, out, "IHDR", header(fb), 0, 13);
+        Deflater def = new Deflater(level);
+        try {
+            deflate(fb, def, (d, off, len) -> writeChunk(buf, out, "IDAT", d, off, len));
+        } finally {
+            def.end();
+        }
+        writeChunk(buf, out, "IEND", new byte[0], 0, 0);
+        ImageSinks.drain(buf, out);
+    }
+
+    /**
+     * @return The IHDR payload for this framebuffer
+     */
+    static byte[] header(Framebuffer fb){
+        return ByteBuffer.allocate(13)
+                .putInt(fb.width())
+                .putInt(fb.height())
+                .put((byte) 8)  //bit depth
+                .put((byte) 2)  //colour type: RGB
+                .put((byte) 0)  //compression
+                .put((byte) 0)  //filter
+                .put((byte) 0)  //interlace
+                .array();
+    }
+
+    /**
+     * Deflates the unfiltered rows of fb and hands the stream to chunks in
+     * pieces of up to 64 KB.
+     */
+    static void deflate(Framebuffer fb, Deflater def, Chunks chunks) throws IOException {
+        int w = fb.width(), h = fb.height();
+        byte[] row = new byte[1 + 3 * w];
+        byte[] chunk = new byte[1 << 16];
+        int len = 0;
+        for (int y = 0; y < h; ++y) {
+            row[0] = 0; //filter type: none
+            for (int x = 0, i = y * w, j = 1; x < w; ++x, ++i) {
+                int rgb = fb.get(i);
+                row[j++] = (byte) (rgb >> 16);
+                row[j++] = (byte) (rgb >> 8);
+                row[j++] = (byte) rgb;
+            }
+            def.setInput(row);
+            while (!def.needsInput()) {
+                len += def.deflate(chunk, len, chunk.length - len);
+                if (len == chunk.length) {
+                    chunks.write(chunk, 0, len);
+                    len = 0;
+                }
+            }
+        }
+        def.finish();
+        while (!def.finished()) {
+            len += def.deflate(chunk, len, chunk.length - len);
+            if (len == chunk.length) {
+                chunks.write(chunk, 0, len);
+                len = 0;
+            }
+        }
+        if (len > 0) {
+            chunks.write(chunk, 0, len);
+        }
+    }
+
+    /**
+     * Appends a length, type, payload, CRC chunk to buf, draining it to out
+     * whenever it fills up.
+     */
+    static void writeChunk(ByteBuffer buf, WritableByteChannel out, String type,
+            byte[] data, int off, int len) throws IOException {
+        byte[] t = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(t);
+        crc.update(data, off, len);
+        if (buf.remaining() < 8) {
+            ImageSinks.drain(buf, out);
+        }
+        buf.putInt(len).put(t);
+        while (len > 0) {
+            if (!buf.hasRemaining()) {
+                ImageSinks.drain(buf, out);
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.put(data, off, n);
+            off += n;
+            len -= n;
+        }
+        if (buf.remaining() < 4) {
+            ImageSinks.drain(buf, out);
+        }
+        buf.putInt((int) crc.getValue());
+    }
+}
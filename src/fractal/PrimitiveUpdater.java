@@ -0,0 +1,32 @@
+package fractal;
+
+/**
+ * Allocation-free counterpart of Updater. The current value of Z is passed in
+ * as a two element array {re, im} and is overwritten with Z_(n+1).
+ * @author Shubham
+ */
+@FunctionalInterface
+public interface PrimitiveUpdater {
+    /**
+     * Advances Z by one iteration, in place.
+     * @param z The current value of Z as {re, im}; receives the next value
+     * @param re Real part of the start value (the pixel's point)
+     * @param im Imaginary part of the start value
+     */
+    void update(double[] z, double re, double im);
+
+    /**
+     * @return n if this updater is exactly Z^n + C with n &gt;= 2, 0 otherwise
+     */
+    default int degree() {
+        return 0;
+    }
+
+    /**
+     * @return The symmetry of renders with this updater, from Z_0 = C;
+     * NONE if it is not known
+     */
+    default Symmetry symmetry() {
+        return Symmetry.NONE;
+    }
+}
@@ -0,0 +1,56 @@
+package fractal;
+
+/**
+ * Flight Recorder events for draws, tiles, writes and movie frames, in the
+ * JFractal category. They are fired whether or not stats are attached.
+ * <p>
+ * This class records nothing. EVENTS is JfrEvents instead where it is on the
+ * classpath and the JDK has jdk.jfr; see ext/build.xml. Each begin method
+ * returns null when nothing records that event, and its end method then does
+ * nothing.
+ * @author Shubham
+ */
+class RenderEvents {
+
+    static final RenderEvents EVENTS = load();
+
+    Object beginDraw() {
+        return null;
+    }
+
+    void endDraw(Object e, int width, int depth) {
+    }
+
+    Object beginTile() {
+        return null;
+    }
+
+    /**
+     * @param iterations Iterations in the tile, -1 when no stats count them
+     */
+    void endTile(Object e, int x0, int x1, int y0, int y1, long iterations) {
+    }
+
+    Object beginWrite() {
+        return null;
+    }
+
+    void endWrite(Object e, String name, long size) {
+    }
+
+    Object beginFrame() {
+        return null;
+    }
+
+    void endFrame(Object e, int frame_no) {
+    }
+
+    private static RenderEvents load() {
+        try {
+            return Class.forName("fractal.JfrEvents").asSubclass(RenderEvents.class)
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            return new RenderEvents();
+        }
+    }
+}
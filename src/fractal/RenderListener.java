@@ -0,0 +1,18 @@
+package fractal;
+
+/**
+ * Receives the passes of a progressive render as they complete.
+ * @author Shubham
+ */
+@FunctionalInterface
+public interface RenderListener {
+    /**
+     * Called after each pass, on the thread that called drawFractal.
+     * f.getOutput() then holds a preview in which every sampled pixel is
+     * painted over the step x step block it starts. Call f.cancel() to stop
+     * the render here.
+     * @param f The fractal being rendered
+     * @param step The spacing between sampled pixels; 1 for the final pass
+     */
+    void passComplete(Fractal f, int step);
+}
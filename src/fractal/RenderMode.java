@@ -0,0 +1,21 @@
+package fractal;
+
+/**
+ * Strategies for choosing which pixels Fractal actually iterates.
+ * @author Shubham
+ */
+public enum RenderMode {
+    /**
+     * Iterate every pixel.
+     */
+    BRUTE_FORCE,
+    /**
+     * Mariani-Silver: iterate the border of a rectangle, and if every border
+     * pixel took the same number of iterations, fill the inside without
+     * iterating it. Otherwise split the rectangle and try again. Filled pixels
+     * are painted with the final value of the rectangle's corner, so this
+     * suits painters that depend mostly on the iteration count. Only applies
+     * to escape-time renders.
+     */
+    BOUNDARY_TRACE
+}
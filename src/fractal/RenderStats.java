@@ -0,0 +1,263 @@
+package fractal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for renders, to be polled while they run or read afterwards.
+ * Hand one to Fractal.Builder.stats or Movie.Builder.stats; several
+ * fractals may share one. Fractals without stats skip all of this.
+ * Flight Recorder events come from RenderEvents, with or without stats.
+ * @author Shubham
+ */
+public final class RenderStats {
+
+    /**
+     * Tiles kept for getTiles; older ones are dropped.
+     */
+    public static final int MAX_TILES = 4096;
+
+    private final LongAdder iterations = new LongAdder();
+    private final LongAdder escaped = new LongAdder(); //Pixels that escaped
+    private final LongAdder bounded = new LongAdder(); //Pixels that reached depth
+    private final LongAdder draws = new LongAdder();
+    private final LongAdder renderNanos = new LongAdder();
+    private final LongAdder colourNanos = new LongAdder();
+    private final LongAdder antiAliasNanos = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder frameNanos = new LongAdder();
+    private final LongAccumulator maxFrameNanos = new LongAccumulator(Math::max, 0);
+    private final Queue<Tile> tiles = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger tileCount = new AtomicInteger();
+    //Iterations by the current thread, so a tile can count its own
+    private final ThreadLocal<long[]> local = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * The iterations and time spent on one tile.
+     */
+    public static final class Tile {
+
+        private final int x0, x1, y0, y1;
+        private final long iterations, nanos;
+
+        Tile(int x0, int x1, int y0, int y1, long iterations, long nanos) {
+            this.x0 = x0;
+            this.x1 = x1;
+            this.y0 = y0;
+            this.y1 = y1;
+            this.iterations = iterations;
+            this.nanos = nanos;
+        }
+
+        public int getX0() {
+            return x0;
+        }
+
+        public int getX1() {
+            return x1;
+        }
+
+        public int getY0() {
+            return y0;
+        }
+
+        public int getY1() {
+            return y1;
+        }
+
+        public long getIterations() {
+            return iterations;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + x0 + ", " + x1 + ") x [" + y0 + ", " + y1 + "): "
+                    + iterations + " iterations in " + nanos / 1000 + " us";
+        }
+    }
+
+    /**
+     * Counts a pixel that took n iterations.
+     */
+    void count(int n, int depth) {
+        iterations.add(n);
+        local.get()[0] += n;
+        (n >= depth ? bounded : escaped).increment();
+    }
+
+    /**
+     * @return Iterations counted so far on this thread
+     */
+    long running() {
+        return local.get()[0];
+    }
+
+    void tile(int x0, int x1, int y0, int y1, long iterations, long nanos) {
+        tiles.add(new Tile(x0, x1, y0, y1, iterations, nanos));
+        if (tileCount.incrementAndGet() > MAX_TILES && tiles.poll() != null) {
+            tileCount.decrementAndGet();
+        }
+    }
+
+    void drawn(long render, long colour, long antiAlias) {
+        draws.increment();
+        renderNanos.add(render);
+        colourNanos.add(colour);
+        antiAliasNanos.add(antiAlias);
+    }
+
+    void written(String name, long size, long nanos) {
+        writes.increment();
+        bytes.add(size);
+        writeNanos.add(nanos);
+    }
+
+    void frame(int frame_no, long nanos) {
+        frames.increment();
+        frameNanos.add(nanos);
+        maxFrameNanos.accumulate(nanos);
+    }
+
+    public long getIterations() {
+        return iterations.sum();
+    }
+
+    /**
+     * @return Pixels iterated, counting supersamples; cached and reused
+     * pixels are not iterated
+     */
+    public long getPixels() {
+        return escaped.sum() + bounded.sum();
+    }
+
+    public long getEscaped() {
+        return escaped.sum();
+    }
+
+    /**
+     * @return Pixels that reached the maximum depth
+     */
+    public long getBounded() {
+        return bounded.sum();
+    }
+
+    /**
+     * @return Escaped pixels over all pixels iterated
+     */
+    public double getEscapedRatio() {
+        long e = escaped.sum(), p = e + bounded.sum();
+        return p == 0 ? 0 : (double) e / p;
+    }
+
+    public long getDraws() {
+        return draws.sum();
+    }
+
+    /**
+     * @return Time spent iterating and painting, over all draws
+     */
+    public long getRenderNanos() {
+        return renderNanos.sum();
+    }
+
+    /**
+     * @return Time spent in the colouring pass of non-LINEAR colourings
+     */
+    public long getColourNanos() {
+        return colourNanos.sum();
+    }
+
+    public long getAntiAliasNanos() {
+        return antiAliasNanos.sum();
+    }
+
+    public double getIterationsPerSecond() {
+        long t = renderNanos.sum() + antiAliasNanos.sum();
+        return t == 0 ? 0 : iterations.sum() * 1e9 / t;
+    }
+
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    public long getWriteNanos() {
+        return writeNanos.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytes.sum();
+    }
+
+    public double getBytesPerSecond() {
+        long t = writeNanos.sum();
+        return t == 0 ? 0 : bytes.sum() * 1e9 / t;
+    }
+
+    public long getFrames() {
+        return frames.sum();
+    }
+
+    /**
+     * @return Total time from starting each movie frame to having written it
+     */
+    public long getFrameNanos() {
+        return frameNanos.sum();
+    }
+
+    public long getMaxFrameNanos() {
+        return maxFrameNanos.get();
+    }
+
+    /**
+     * @return The last MAX_TILES tiles drawn, oldest first
+     */
+    public List<Tile> getTiles() {
+        return new ArrayList<>(tiles);
+    }
+
+    /**
+     * Zeroes every counter. Counts from renders still running may be split
+     * across the reset.
+     */
+    public void reset() {
+        iterations.reset();
+        escaped.reset();
+        bounded.reset();
+        draws.reset();
+        renderNanos.reset();
+        colourNanos.reset();
+        antiAliasNanos.reset();
+        writes.reset();
+        writeNanos.reset();
+        bytes.reset();
+        frames.reset();
+        frameNanos.reset();
+        maxFrameNanos.reset();
+        tiles.clear();
+        tileCount.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d draws: %d iterations (%.3g/s), %d pixels (%.1f%% escaped), "
+                + "render %d ms, colour %d ms, anti-alias %d ms; "
+                + "%d writes: %d bytes (%.3g/s) in %d ms; %d frames, max %d ms",
+                getDraws(), getIterations(), getIterationsPerSecond(), getPixels(),
+                100 * getEscapedRatio(), getRenderNanos() / 1000000,
+                getColourNanos() / 1000000, getAntiAliasNanos() / 1000000, getWrites(), getBytesWritten(),
+                getBytesPerSecond(), getWriteNanos() / 1000000, getFrames(),
+                getMaxFrameNanos() / 1000000);
+    }
+}
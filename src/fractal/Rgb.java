@@ -0,0 +1,50 @@
+package fractal;
+
+/**
+ * Utility functions for packed 0xAARRGGBB pixels.
+ * @author Shubham
+ */
+public final class Rgb {
+
+    private Rgb(){}
+
+    /**
+     * Packs an opaque pixel. Channels are clamped to [0, 255].
+     */
+    public static int pack(int r, int g, int b){
+        return 0xFF000000 | (clamp(r) << 16) | (clamp(g) << 8) | clamp(b);
+    }
+
+    public static int red(int rgb){
+        return (rgb >> 16) & 0xFF;
+    }
+
+    public static int green(int rgb){
+        return (rgb >> 8) & 0xFF;
+    }
+
+    public static int blue(int rgb){
+        return rgb & 0xFF;
+    }
+
+    /**
+     * @param rgb A pixel in the "r g b" format used by Painter
+     * @return The packed pixel
+     */
+    public static int parse(String rgb){
+        String[] c = rgb.trim().split("\\s+");
+        return pack(Integer.parseInt(c[0]), Integer.parseInt(c[1]), Integer.parseInt(c[2]));
+    }
+
+    /**
+     * @param rgb A packed pixel
+     * @return The pixel in the "r g b" format used by Painter
+     */
+    public static String format(int rgb){
+        return red(rgb) + " " + green(rgb) + " " + blue(rgb);
+    }
+
+    private static int clamp(int c){
+        return c < 0 ? 0 : c > 255 ? 255 : c;
+    }
+}
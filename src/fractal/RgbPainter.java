@@ -0,0 +1,49 @@
+package fractal;
+
+import org.apache.commons.math3.complex.Complex;
+
+/**
+ * Given shading information for a pixel, generates a packed 0xAARRGGBB pixel.
+ * Unlike Painter this works on primitives, so painting does not allocate.
+ * @author Shubham
+ */
+@FunctionalInterface
+public interface RgbPainter {
+    int paint(float value, double re, double im);
+
+    /**
+     * @return Whether the colour depends on the value alone, not on Z. A
+     * symmetric render can then copy colours rather than keep every Z.
+     */
+    default boolean valueOnly(){
+        return false;
+    }
+
+    /**
+     * @param p A painter that ignores re and im
+     * @return p, with valueOnly true
+     */
+    static RgbPainter valueOnly(RgbPainter p){
+        return new RgbPainter() {
+            @Override
+            public int paint(float value, double re, double im) {
+                return p.paint(value, re, im);
+            }
+
+            @Override
+            public boolean valueOnly() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Adapts a String painter. Every pixel painted this way allocates, so
+     * this is only meant for painters that have no primitive version.
+     * @param p The painter to wrap
+     * @return An equivalent RgbPainter
+     */
+    static RgbPainter of(Painter p){
+        return (v, re, im) -> Rgb.parse(p.paint(v, new Complex(re, im)));
+    }
+}
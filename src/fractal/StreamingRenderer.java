@@ -0,0 +1,122 @@
+package fractal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Renders a Fractal straight to disk one horizontal band at a time, so the
+ * memory used stays the same whatever the resolution. The output file is
+ * sized up front and each band is written into its own memory-mapped region.
+ * <p>
+ * Finished bands are recorded in a side file, name + ".bands", holding a
+ * header and then one byte per band. A band is only marked once its pixels
+ * have been forced to disk, so a render that crashes or is killed can be
+ * started again and will skip the bands already done. The header holds the
+ * band height, the band count and Fractal.fingerprint(); if any of them
+ * differ, the render starts over. The side file is deleted when the image
+ * is complete.
+ * @author Shubham
+ */
+public final class StreamingRenderer {
+
+    private static final int HEADER = 16; //bandHeight, band count and fingerprint
+
+    private final Fractal fractal;
+    private final int bandHeight;
+    private final boolean ppm;
+
+    /**
+     * @param fractal What to render; its output is never allocated
+     * @param bandHeight Rows per band
+     * @param ppm Whether to write a P6 PPM header before the pixels; if not,
+     * the file is headerless 8-bit RGB
+     * @throws IllegalArgumentException If the fractal's colouring is not
+     * LINEAR; the others need the whole image
+     */
+    public StreamingRenderer(Fractal fractal, int bandHeight, boolean ppm) {
+        if (fractal.getColouring() != Colouring.LINEAR) {
+            throw new IllegalArgumentException(fractal.getColouring()
+                    + " colouring needs the whole image; streaming is LINEAR only");
+        }
+        this.fractal = fractal;
+        this.bandHeight = bandHeight;
+        this.ppm = ppm;
+    }
+
+    /**
+     * Renders the image to name + ".ppm" or name + ".rgb", resuming a
+     * previous attempt if one was interrupted.
+     * @param name The file name, without extension
+     * @throws IOException If the files cannot be written
+     */
+    public void render(String name) throws IOException {
+        int size = fractal.getSize();
+        byte[] header = ppm ? ImageSinks.header(size, size) : new byte[0];
+        long row = 3L * size;
+        long length = header.length + row * size;
+        int bands = (size + bandHeight - 1) / bandHeight;
+        Path out = Paths.get(name + (ppm ? ".ppm" : ".rgb"));
+        Path done = Paths.get(name + ".bands");
+        ByteBuffer expected = ByteBuffer.allocate(HEADER).putInt(bandHeight)
+                .putInt(bands).putLong(fractal.fingerprint());
+        expected.flip();
+        try (FileChannel image = FileChannel.open(out, CREATE, READ, WRITE);
+                FileChannel progress = FileChannel.open(done, CREATE, READ, WRITE)) {
+            if (image.size() != length || progress.size() != HEADER + bands
+                    || !expected.equals(read(progress))) {
+                image.truncate(0);
+                progress.truncate(0);
+                image.write(ByteBuffer.wrap(header), 0);
+                image.write(ByteBuffer.allocate(1), length - 1);
+                progress.write(expected, 0);
+                progress.write(ByteBuffer.allocate(bands), HEADER);
+                progress.force(true);
+            }
+            MappedByteBuffer marks = progress.map(FileChannel.MapMode.READ_WRITE, HEADER, bands);
+            Framebuffer band = Framebuffer.heap(size, bandHeight);
+            for (int b = 0; b < bands; b++) {
+                if (marks.get(b) != 0) {
+                    continue;
+                }
+                int row0 = b * bandHeight;
+                int rows = Math.min(bandHeight, size - row0);
+                if (rows < bandHeight) {
+                    band = Framebuffer.heap(size, rows);
+                }
+                fractal.drawBand(row0, band);
+                MappedByteBuffer pixels = image.map(FileChannel.MapMode.READ_WRITE,
+                        header.length + row * row0, row * rows);
+                for (int i = 0; i < size * rows; i++) {
+                    int rgb = band.get(i);
+                    pixels.put((byte) (rgb >> 16));
+                    pixels.put((byte) (rgb >> 8));
+                    pixels.put((byte) rgb);
+                }
+                pixels.force();
+                marks.put(b, (byte) 1);
+                marks.force();
+            }
+        }
+        Files.delete(done);
+    }
+
+    /**
+     * @return The header of a side file that is at least HEADER bytes long
+     */
+    private static ByteBuffer read(FileChannel progress) throws IOException {
+        ByteBuffer h = ByteBuffer.allocate(HEADER);
+        while (h.hasRemaining()) {
+            if (progress.read(h, h.position()) < 0) {
+                break;
+            }
+        }
+        h.flip();
+        return h;
+    }
+}
@@ -0,0 +1,205 @@
+package fractal;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.math3.complex.Complex;
+
+/**
+ * Symmetry of a render about the origin: a mirror in the real axis, where
+ * the point conj(C) ends on conj(Z), and n-fold rotation, where the point
+ * w C ends on w Z for every w with w^n = 1. A Fractal with a symmetry only
+ * iterates part of the image and fills in the rest by copying pixels.
+ * <p>
+ * Pixels can only be copied where the symmetry maps the pixel grid onto
+ * itself. That means the mirror needs an offset on the real axis, and
+ * rotation needs an offset of 0 and is limited to half and quarter turns.
+ * For example, 6-fold symmetry is used as 2-fold and 3-fold symmetry is not
+ * used at all.
+ * @author Shubham
+ */
+public final class Symmetry {
+
+    public static final Symmetry NONE = new Symmetry(false, 1);
+
+    private final boolean mirror;
+    private final int order;
+
+    private Symmetry(boolean mirror, int order) {
+        this.mirror = mirror;
+        this.order = order;
+    }
+
+    /**
+     * @return Mirror symmetry in the real axis, as for any updater with
+     * real coefficients
+     */
+    public static Symmetry mirror(){
+        return new Symmetry(true, 1);
+    }
+
+    /**
+     * @param n Number of rotations, e.g. n - 1 for Z^n + C
+     * @return n-fold rotational symmetry about the origin
+     */
+    public static Symmetry rotation(int n){
+        if (n < 1) {
+            throw new IllegalArgumentException("Rotation must be at least 1-fold");
+        }
+        return new Symmetry(false, n);
+    }
+
+    /**
+     * @return n-fold rotational symmetry together with the mirror
+     */
+    public static Symmetry dihedral(int n){
+        return new Symmetry(true, rotation(n).order);
+    }
+
+    public boolean isMirror(){
+        return mirror;
+    }
+
+    public int getOrder(){
+        return order;
+    }
+
+    /**
+     * @return The part of this symmetry that maps the pixel grid of a render
+     * at offset from start onto itself, or null if none does
+     */
+    Symmetry grid(Complex offset, Complex start) {
+        boolean m = mirror && offset.getImaginary() == 0
+                && (start == null || start.getImaginary() == 0);
+        int q = order % 4 == 0 ? 4 : order % 2 == 0 ? 2 : 1;
+        if (offset.getReal() != 0 || offset.getImaginary() != 0
+                || start != null && (start.getReal() != 0 || start.getImaginary() != 0)) {
+            q = 1;
+        }
+        return m || q > 1 ? new Symmetry(m, q) : null;
+    }
+
+    /**
+     * Rectangles {x0, x1, y0, y1}, exclusive at x1 and y1, that hold the
+     * source of every pixel fold moves, for an image from -w to w. The
+     * eighth of the image left by quarter turns and the mirror is covered
+     * by columns strip pixels wide.
+     */
+    int[][] regions(int w, int strip) {
+        if (order == 4 && mirror) {
+            List<int[]> r = new ArrayList<>();
+            for (int x = -w; x < 1; x += strip) {
+                int x1 = Math.min(x + strip, 1);
+                r.add(new int[]{x, x1, -w, x1});
+            }
+            return r.toArray(new int[0][]);
+        }
+        if (order == 4 || order == 2 && mirror) {
+            return new int[][]{{-w, 1, -w, 1}};
+        }
+        if (order == 2) {
+            return new int[][]{{-w, w, -w, 1}, {-w, -w + 1, 1, w}};
+        }
+        return new int[][]{{-w, w, -w, 1}};
+    }
+
+    /**
+     * Finds the pixel that pixel (x, y) of an image from -w to w is copied
+     * from. Pixels whose partner falls off the image are their own source.
+     *
+     * @param s Receives the source as {x, y}
+     * @return -1 if (x, y) is its own source, otherwise how to transform the
+     * source's Z, as for apply
+     */
+    int fold(int x, int y, int w, int[] s) {
+        int t = -1;
+        if (order == 4) {
+            if (x >= 1 && y >= 1) {
+                t = 2;
+                x = -x;
+                y = -y;
+            } else if (y >= 1) {
+                t = 3;
+                int r = x;
+                x = -y;
+                y = r;
+            } else if (x >= 1) {
+                t = 1;
+                int r = x;
+                x = y;
+                y = -r;
+            }
+            if (mirror && y > x) {
+                t = compose(t, 5);
+                int r = x;
+                x = y;
+                y = r;
+            }
+        } else if (order == 2 && mirror) {
+            if (x >= 1) {
+                t = 6;
+                x = -x;
+            }
+            if (y >= 1) {
+                t = compose(t, 4);
+                y = -y;
+            }
+        } else if (order == 2) {
+            if (y >= 1 && x > -w) {
+                t = 2;
+                x = -x;
+                y = -y;
+            }
+        } else if (y >= 1) {
+            t = 4;
+            y = -y;
+        }
+        s[0] = x;
+        s[1] = y;
+        return t;
+    }
+
+    /**
+     * @return The transform that applies b and then a; a may be -1 for none
+     */
+    private static int compose(int a, int b) {
+        if (a < 0) {
+            return b;
+        }
+        int k = (a & 3) + ((a & 4) != 0 ? -(b & 3) : b & 3);
+        return (k & 3) | ((a ^ b) & 4);
+    }
+
+    /**
+     * Transform t of z in place: z becomes i^(t &amp; 3) z, with z first
+     * conjugated if t &amp; 4 is set. This only negates and swaps, so
+     * nothing is rounded.
+     */
+    static void apply(int t, double[] z) {
+        double re = z[0], im = (t & 4) != 0 ? neg(z[1]) : z[1];
+        switch (t & 3) {
+            case 1:
+                z[0] = neg(im);
+                z[1] = re;
+                break;
+            case 2:
+                z[0] = neg(re);
+                z[1] = neg(im);
+                break;
+            case 3:
+                z[0] = im;
+                z[1] = neg(re);
+                break;
+            default:
+                z[0] = re;
+                z[1] = im;
+        }
+    }
+
+    /**
+     * @return -v, except that zeros stay +0.0 as iterating leaves them;
+     * -0.0 would paint differently from +0.0 by angle
+     */
+    private static double neg(double v) {
+        return 0.0 - v;
+    }
+}
@@ -0,0 +1,222 @@
+package fractal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Size-bounded LRU cache of iterated tiles, shared between Fractals. A tile
+ * is keyed by everything that decides its iteration results, so Fractals that
+ * differ only in how they are painted reuse each other's tiles and only pay
+ * for painting. When the cache is over its size the least recently used
+ * tiles are dropped, or written to a spill directory if there is one and
+ * read back from there on their next use.
+ * @author Shubham
+ */
+public final class TileCache {
+
+    private static final int BYTES_PER_PIXEL = 4 + 8 + 8;
+
+    private final long maxBytes;
+    private final Path spill; //Directory for evicted tiles, may be null
+    private final LinkedHashMap<Key, IterationBuffer> tiles = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, Path> spilled = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+    private long bytes = 0;
+    private long spillCount = 0;
+
+    /**
+     * @param maxBytes How much tile data to keep in memory
+     */
+    public TileCache(long maxBytes) {
+        this(maxBytes, null);
+    }
+
+    /**
+     * @param maxBytes How much tile data to keep in memory
+     * @param spill Existing directory to write evicted tiles to
+     */
+    public TileCache(long maxBytes, Path spill) {
+        this.maxBytes = maxBytes;
+        this.spill = spill;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Drops every tile, including spilled ones.
+     */
+    public synchronized void clear() {
+        tiles.clear();
+        bytes = 0;
+        for (Path p : spilled.values()) {
+            try {
+                Files.deleteIfExists(p);
+            } catch (IOException ex) {
+                //Nothing reads it any more, so leaving it behind is harmless
+            }
+        }
+        spilled.clear();
+    }
+
+    synchronized IterationBuffer get(Key key) {
+        IterationBuffer t = tiles.get(key);
+        if (t == null) {
+            Path p = spilled.remove(key);
+            if (p != null) {
+                t = read(p, key.size());
+                if (t != null) {
+                    insert(key, t);
+                }
+            }
+        }
+        (t == null ? misses : hits).incrementAndGet();
+        return t;
+    }
+
+    synchronized void put(Key key, IterationBuffer t) {
+        if (!tiles.containsKey(key)) {
+            insert(key, t);
+        }
+    }
+
+    private void insert(Key key, IterationBuffer t) {
+        tiles.put(key, t);
+        bytes += (long) key.size() * BYTES_PER_PIXEL;
+        Iterator<Map.Entry<Key, IterationBuffer>> it = tiles.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<Key, IterationBuffer> e = it.next();
+            it.remove();
+            bytes -= (long) e.getKey().size() * BYTES_PER_PIXEL;
+            if (spill != null) {
+                write(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private void write(Key key, IterationBuffer t) {
+        Path p = spill.resolve("tile-" + (spillCount++) + ".bin");
+        int size = key.size();
+        ByteBuffer buf = ByteBuffer.allocateDirect(size * BYTES_PER_PIXEL);
+        for (int i = 0; i < size; i++) {
+            buf.putInt(t.n[i]).putDouble(t.re[i]).putDouble(t.im[i]);
+        }
+        buf.flip();
+        try (FileChannel ch = FileChannel.open(p, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            spilled.put(key, p);
+        } catch (IOException ex) {
+            //Spilling is best effort; the tile is simply iterated again
+        }
+    }
+
+    private static IterationBuffer read(Path p, int size) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(size * BYTES_PER_PIXEL);
+        try (FileChannel ch = FileChannel.open(p, READ, DELETE_ON_CLOSE)) {
+            while (buf.hasRemaining()) {
+                if (ch.read(buf) < 0) {
+                    break;
+                }
+            }
+        } catch (IOException ex) {
+            return null;
+        }
+        if (buf.hasRemaining()) {
+            return null;
+        }
+        buf.flip();
+        IterationBuffer t = new IterationBuffer(size);
+        for (int i = 0; i < size; i++) {
+            t.set(i, buf.getInt(), buf.getDouble(), buf.getDouble());
+        }
+        return t;
+    }
+
+    /**
+     * Everything that decides the iteration results of one tile. Updaters,
+     * warps, traps and interior detectors are compared by identity.
+     */
+    static final class Key {
+
+        private final double re, im;
+        private final float scale, inf_lim;
+        private final int width, depth;
+        private final Object update, warp, trap, start, interior;
+        private final int x0, x1, y0, y1;
+
+        Key(double re, double im, float scale, float inf_lim, int width, int depth,
+                Object update, Object warp, Object trap, Object start,
+                Object interior, int x0, int x1, int y0, int y1) {
+            this.re = re;
+            this.im = im;
+            this.scale = scale;
+            this.inf_lim = inf_lim;
+            this.width = width;
+            this.depth = depth;
+            this.update = update;
+            this.warp = warp;
+            this.trap = trap;
+            this.start = start;
+            this.interior = interior;
+            this.x0 = x0;
+            this.x1 = x1;
+            this.y0 = y0;
+            this.y1 = y1;
+        }
+
+        int size() {
+            return (x1 - x0) * (y1 - y0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return Double.compare(re, k.re) == 0 && Double.compare(im, k.im) == 0
+                    && Float.compare(scale, k.scale) == 0
+                    && Float.compare(inf_lim, k.inf_lim) == 0
+                    && width == k.width && depth == k.depth
+                    && update == k.update && warp == k.warp && trap == k.trap
+                    && (start == null ? k.start == null : start.equals(k.start))
+                    && interior == k.interior
+                    && x0 == k.x0 && x1 == k.x1 && y0 == k.y0 && y1 == k.y1;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = Double.hashCode(re);
+            h = 31 * h + Double.hashCode(im);
+            h = 31 * h + Float.hashCode(scale);
+            h = 31 * h + Float.hashCode(inf_lim);
+            h = 31 * h + width;
+            h = 31 * h + depth;
+            h = 31 * h + System.identityHashCode(update);
+            h = 31 * h + System.identityHashCode(warp);
+            h = 31 * h + System.identityHashCode(trap);
+            h = 31 * h + (start == null ? 0 : start.hashCode());
+            h = 31 * h + System.identityHashCode(interior);
+            h = 31 * h + x0;
+            h = 31 * h + x1;
+            h = 31 * h + y0;
+            return 31 * h + y1;
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package fractal;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.math3.complex.Complex;
+
+/**
+ * Embedded HTTP server for exploring fractals like a slippy map. GET
+ * /z/x/y.png renders tile (x, y) of zoom level z: the square from -2 - 2i to
+ * 2 + 2i is split into 2^z by 2^z tiles, numbered from the top left. The
+ * query string may set:
+ * <ul>
+ * <li>formula: an updater for Formula, default z^2 + c</li>
+ * <li>depth: maximum iterations, default 256</li>
+ * <li>paint: blackWhite, whiteBlack, blueWhite, random or newton</li>
+ * <li>colouring: linear or smooth; histogram is refused, since each tile
+ * would be equalised on its own and the seams would show</li>
+ * </ul>
+ * GET / serves a page that browses the tiles with Leaflet. The server only
+ * listens on loopback unless it is given another address.
+ * <p>
+ * Requests run on virtual threads where the JDK has them and on a cached
+ * pool otherwise. At most one render or formula compile per core runs at a
+ * time, concurrent requests for the same tile or formula share one, and
+ * encoded tiles and compiled formulas are kept in LRU caches.
+ * @author Shubham
+ */
+public final class TileServer {
+
+    private static final int MAX_ZOOM = 40;
+    private static final int MAX_DEPTH = 100000;
+    private static final int MAX_FORMULA = 256; //Longest formula accepted, in chars
+    private static final int MAX_FORMULAS = 64; //Compiled formulas kept
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final int tileSize;
+    private final Semaphore renders = new Semaphore(Runtime.getRuntime().availableProcessors());
+    private final Map<String, CompletableFuture<byte[]>> inflight = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<PrimitiveUpdater>> compiling = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, PrimitiveUpdater> formulas = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, byte[]> tiles = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private long bytes = 0;
+    private final AtomicLong hits = new AtomicLong(), rendered = new AtomicLong(),
+            shared = new AtomicLong();
+
+    /**
+     * Listens on the loopback address only.
+     * @param port Port to listen on, 0 for any free one
+     * @param tileSize Width and height of a tile in pixels, even
+     * @param maxBytes How much encoded tile data to cache
+     * @throws IOException If the port cannot be bound
+     */
+    public TileServer(int port, int tileSize, long maxBytes) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port, tileSize, maxBytes);
+    }
+
+    /**
+     * @param bind Address to listen on; the wildcard address listens on
+     * every interface, so anyone who can reach the machine can make it render
+     * @param port Port to listen on, 0 for any free one
+     * @param tileSize Width and height of a tile in pixels, even
+     * @param maxBytes How much encoded tile data to cache
+     * @throws IOException If the port cannot be bound
+     */
+    public TileServer(InetAddress bind, int port, int tileSize, long maxBytes) throws IOException {
+        this.tileSize = tileSize;
+        this.maxBytes = maxBytes;
+        this.server = HttpServer.create(new InetSocketAddress(bind, port), 0);
+        this.executor = requestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    /**
+     * @return A virtual thread per task executor where the JDK has one
+     */
+    private static ExecutorService requestExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests and waits up to delay seconds for running
+     * ones to finish.
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        executor.shutdownNow();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return Requests answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Tiles rendered
+     */
+    public long getRendered() {
+        return rendered.get();
+    }
+
+    /**
+     * @return Requests that waited for a render another request started
+     */
+    public long getShared() {
+        return shared.get();
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try {
+            String path = ex.getRequestURI().getPath();
+            if (!"GET".equals(ex.getRequestMethod())) {
+                send(ex, 405, "text/plain", "GET only".getBytes(StandardCharsets.UTF_8));
+            } else if (path.equals("/")) {
+                send(ex, 200, "text/html", page().getBytes(StandardCharsets.UTF_8));
+            } else {
+                String[] zxy = path.substring(1).replaceFirst("\\.png$", "").split("/");
+                if (zxy.length != 3) {
+                    send(ex, 404, "text/plain", "Not found".getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                byte[] png = tile(Integer.parseInt(zxy[0]), Integer.parseInt(zxy[1]),
+                        Integer.parseInt(zxy[2]), query(ex.getRequestURI().getRawQuery()));
+                ex.getResponseHeaders().set("Cache-Control", "public, max-age=86400");
+                send(ex, 200, "image/png", png);
+            }
+        } catch (IllegalArgumentException e) {
+            //Includes NumberFormatException
+            send(ex, 400, "text/plain", String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            send(ex, 500, "text/plain", String.valueOf(e).getBytes(StandardCharsets.UTF_8));
+        } finally {
+            ex.close();
+        }
+    }
+
+    private static void send(HttpExchange ex, int status, String type, byte[] body) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", type);
+        ex.sendResponseHeaders(status, body.length);
+        try (OutputStream out = ex.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> query(String raw) throws UnsupportedEncodingException {
+        Map<String, String> q = new HashMap<>();
+        if (raw == null) {
+            return q;
+        }
+        for (String kv : raw.split("&")) {
+            int eq = kv.indexOf('=');
+            if (eq > 0) {
+                q.put(URLDecoder.decode(kv.substring(0, eq), "UTF-8"),
+                        URLDecoder.decode(kv.substring(eq + 1), "UTF-8"));
+            }
+        }
+        return q;
+    }
+
+    /**
+     * @return The encoded tile, from the cache, from a render another
+     * request already started, or rendered now
+     */
+    private byte[] tile(int z, int x, int y, Map<String, String> q) {
+        if (z < 0 || z > MAX_ZOOM || x < 0 || y < 0 || x >= 1L << z || y >= 1L << z) {
+            throw new IllegalArgumentException("No tile " + z + "/" + x + "/" + y);
+        }
+        String formula = q.getOrDefault("formula", "z^2 + c");
+        if (formula.length() > MAX_FORMULA) {
+            throw new IllegalArgumentException("formula must be at most " + MAX_FORMULA + " characters");
+        }
+        int depth = Integer.parseInt(q.getOrDefault("depth", "256"));
+        if (depth < 1 || depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("depth must be from 1 to " + MAX_DEPTH);
+        }
+        String paint = q.getOrDefault("paint", "blackWhite");
+        Colouring colouring = Colouring.valueOf(q.getOrDefault("colouring", "linear").toUpperCase());
+        if (colouring == Colouring.HISTOGRAM) {
+            throw new IllegalArgumentException("histogram colouring is per tile, so tiles would not match");
+        }
+        String key = z + "/" + x + "/" + y + "|" + formula + "|" + depth + "|" + paint + "|" + colouring;
+        byte[] png = cached(key);
+        if (png != null) {
+            hits.incrementAndGet();
+            return png;
+        }
+        RgbPainter painter = painter(paint);
+        CompletableFuture<byte[]> mine = new CompletableFuture<>();
+        CompletableFuture<byte[]> running = inflight.putIfAbsent(key, mine);
+        if (running != null) {
+            shared.incrementAndGet();
+            return join(running);
+        }
+        try {
+            //Another render may have cached the tile and left inflight since the lookup above
+            png = cached(key);
+            if (png != null) {
+                hits.incrementAndGet();
+                mine.complete(png);
+                return png;
+            }
+            png = render(z, x, y, formula, depth, painter, colouring);
+            cache(key, png);
+            mine.complete(png);
+            return png;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, mine);
+        }
+    }
+
+    /**
+     * @return The compiled formula, from the cache, from a compile another
+     * request already started, or compiled now; call holding a renders permit
+     */
+    private PrimitiveUpdater formula(String src) {
+        PrimitiveUpdater update = compiled(src);
+        if (update != null) {
+            return update;
+        }
+        CompletableFuture<PrimitiveUpdater> mine = new CompletableFuture<>();
+        CompletableFuture<PrimitiveUpdater> running = compiling.putIfAbsent(src, mine);
+        if (running != null) {
+            return join(running);
+        }
+        try {
+            //As in tile, another compile may have finished since the lookup above
+            update = compiled(src);
+            if (update != null) {
+                mine.complete(update);
+                return update;
+            }
+            update = Formula.compile(src);
+            compiled(src, update);
+            mine.complete(update);
+            return update;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            compiling.remove(src, mine);
+        }
+    }
+
+    /**
+     * Waits for work another request started, passing on a bad request as
+     * one.
+     */
+    private static <T> T join(CompletableFuture<T> f) {
+        try {
+            return f.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw new IllegalArgumentException(e.getCause().getMessage(), e.getCause());
+            }
+            throw e;
+        }
+    }
+
+    private static RgbPainter painter(String name) {
+        switch (name) {
+            case "blackWhite":
+                return RgbPainter.valueOnly(Painters::blackWhitePaint);
+            case "whiteBlack":
+                return RgbPainter.valueOnly(Painters::whiteBlackPaint);
+            case "blueWhite":
+                return RgbPainter.valueOnly(Painters::blueWhitePaint);
+            case "random":
+                return RgbPainter.valueOnly(Painters::randomPaint);
+            case "newton":
+                return Painters::newtonPaint;
+            default:
+                throw new IllegalArgumentException("Unknown painter " + name);
+        }
+    }
+
+    private byte[] render(int z, int x, int y, String formula, int depth,
+            RgbPainter painter, Colouring colouring) {
+        double span = 4.0 / (1L << z);
+        Fractal f;
+        renders.acquireUninterruptibly();
+        try {
+            f = new Fractal.Builder()
+                    .width(tileSize / 2)
+                    .depth(depth)
+                    .scale((float) (span / 2))
+                    .infLim(colouring == Colouring.LINEAR ? 5.0f : 1000.0f)
+                    .offset(new Complex(-2 + (x + 0.5) * span, 2 - (y + 0.5) * span))
+                    .primitiveUpdate(formula(formula))
+                    .rgbPaint(painter)
+                    .colouring(colouring)
+                    .build();
+            f.drawFractal();
+        } finally {
+            renders.release();
+        }
+        rendered.incrementAndGet();
+        Framebuffer out = f.getOutput();
+        //Fractal keeps its bottom row in row 0, so read the rows from row 1
+        Framebuffer view = new Framebuffer() {
+            @Override
+            public int width() {
+                return out.width();
+            }
+
+            @Override
+            public int height() {
+                return out.height();
+            }
+
+            @Override
+            public int get(int index) {
+                int n = out.width() * out.height();
+                return out.get((index + out.width()) % n);
+            }
+
+            @Override
+            public void set(int index, int rgb) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        try {
+            ImageSinks.png().write(view, Channels.newChannel(png));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return png.toByteArray();
+    }
+
+    private synchronized byte[] cached(String key) {
+        return tiles.get(key);
+    }
+
+    private synchronized void cache(String key, byte[] png) {
+        byte[] old = tiles.put(key, png);
+        bytes += png.length - (old == null ? 0 : old.length);
+        Iterator<byte[]> it = tiles.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().length;
+            it.remove();
+        }
+    }
+
+    private synchronized PrimitiveUpdater compiled(String src) {
+        return formulas.get(src);
+    }
+
+    private synchronized void compiled(String src, PrimitiveUpdater update) {
+        formulas.put(src, update);
+        Iterator<PrimitiveUpdater> it = formulas.values().iterator();
+        while (formulas.size() > MAX_FORMULAS && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private String page() {
+        return "<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>JFractal</title>\n"
+                + "<link rel=\"stylesheet\" href=\"https://unpkg.com/leaflet@1.9.4/dist/leaflet.css\">\n"
+                + "<script src=\"https://unpkg.com/leaflet@1.9.4/dist/leaflet.js\"></script>\n"
+                + "<style>html,body,#map{height:100%;margin:0}</style></head><body><div id=\"map\"></div>\n"
+                + "<script>\n"
+                + "var map = L.map('map', {crs: L.CRS.Simple, minZoom: 0, maxZoom: " + MAX_ZOOM + "});\n"
+                + "L.tileLayer('/{z}/{x}/{y}.png' + location.search, {tileSize: " + tileSize
+                + ", noWrap: true, bounds: [[-" + tileSize + ", 0], [0, " + tileSize + "]],"
+                + " maxZoom: " + MAX_ZOOM + "}).addTo(map);\n"
+                + "map.setView([-" + tileSize / 2 + ", " + tileSize / 2 + "], 1);\n"
+                + "</script></body></html>\n";
+    }
+}
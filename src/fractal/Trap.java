@@ -0,0 +1,11 @@
+package fractal;
+
+/**
+ * An orbit trap on primitives: how far a point of the orbit is from the
+ * trap. Unlike the Function&lt;Complex, Double&gt; traps this does not box.
+ * @author Shubham
+ */
+@FunctionalInterface
+public interface Trap {
+    double distance(double re, double im);
+}
@@ -0,0 +1,69 @@
+package fractal;
+
+/**
+ * Common orbit trap shapes.
+ * @author Shubham
+ */
+public final class Traps {
+
+    private Traps(){}
+
+    /**
+     * @return Distance to the point re + i im
+     */
+    public static Trap point(double re, double im){
+        return (zr, zi) -> Math.hypot(zr - re, zi - im);
+    }
+
+    /**
+     * @param angle Angle of the line with the real axis
+     * @return Distance to the line through re + i im at that angle
+     */
+    public static Trap line(double re, double im, double angle){
+        double s = Math.sin(angle), c = Math.cos(angle);
+        return (zr, zi) -> Math.abs(c * (zi - im) - s * (zr - re));
+    }
+
+    /**
+     * @return Distance to the nearer of the horizontal and vertical lines
+     * through re + i im
+     */
+    public static Trap cross(double re, double im){
+        return (zr, zi) -> Math.min(Math.abs(zr - re), Math.abs(zi - im));
+    }
+
+    /**
+     * @return Distance to the circle of radius r around re + i im
+     */
+    public static Trap circle(double re, double im, double r){
+        return (zr, zi) -> Math.abs(Math.hypot(zr - re, zi - im) - r);
+    }
+
+    /**
+     * The trap from Main: z is moved onto the circle of radius r around 0
+     * and the taxicab length of the move is the distance.
+     */
+    public static Trap ring(double r){
+        return (zr, zi) -> {
+            double m = Math.hypot(zr, zi);
+            double f = (m - r) / m;
+            return Math.abs(zi * f) + Math.abs(zr * f);
+        };
+    }
+
+    /**
+     * Several traps in one pass.
+     * @return Distance to the nearest of the traps
+     */
+    public static Trap min(Trap... traps){
+        Trap[] t = traps.clone();
+        return (zr, zi) -> {
+            double d = Double.POSITIVE_INFINITY;
+            for (Trap trap : t) {
+                double e = trap.distance(zr, zi);
+                d = e < d ? e : d;
+            }
+            return d;
+        };
+    }
+}
@@ -0,0 +1,176 @@
+package fractal;
+
+import org.apache.commons.math3.complex.Complex;
+
+/**
+ * Common primitive updaters. These work on raw doubles and do not allocate,
+ * so they should be preferred over Complex lambdas wherever they apply.
+ * @author Shubham
+ */
+public final class Updaters {
+
+    private Updaters(){}
+
+    private static final PrimitiveUpdater QUADRATIC = new PrimitiveUpdater() {
+        @Override
+        public void update(double[] z, double re, double im) {
+            double zr = z[0], zi = z[1];
+            z[0] = zr * zr - zi * zi + re;
+            z[1] = 2.0 * zr * zi + im;
+        }
+
+        @Override
+        public int degree() {
+            return 2;
+        }
+
+        @Override
+        public Symmetry symmetry() {
+            return Symmetry.mirror();
+        }
+    };
+
+    /**
+     * @return Z^2 + C, the Mandelbrot updater
+     */
+    public static PrimitiveUpdater quadratic(){
+        return QUADRATIC;
+    }
+
+    /**
+     * @param n Any integer exponent, including negative ones
+     * @return Z^n + C
+     */
+    public static PrimitiveUpdater power(int n){
+        if (n == 2) {
+            return QUADRATIC;
+        }
+        return new PrimitiveUpdater() {
+            @Override
+            public void update(double[] z, double re, double im) {
+                pow(z, n);
+                z[0] += re;
+                z[1] += im;
+            }
+
+            @Override
+            public int degree() {
+                return n >= 2 ? n : 0;
+            }
+
+            @Override
+            public Symmetry symmetry() {
+                return powerSymmetry(n, 0, 0);
+            }
+        };
+    }
+
+    /**
+     * @param n Any integer exponent, including negative ones
+     * @param k Constant to add on every iteration
+     * @return Z^n + k, e.g. the Julia set of Z^n + C at C = k
+     */
+    public static PrimitiveUpdater power(int n, Complex k){
+        double kr = k.getReal(), ki = k.getImaginary();
+        return new PrimitiveUpdater() {
+            @Override
+            public void update(double[] z, double re, double im) {
+                pow(z, n);
+                z[0] += kr;
+                z[1] += ki;
+            }
+
+            @Override
+            public Symmetry symmetry() {
+                return powerSymmetry(n, kr, ki);
+            }
+        };
+    }
+
+    /**
+     * @return The symmetry of Z^n + C, or of Z^n + k: rotating Z and C by w
+     * rotates the result by w if w^(n - 1) = 1 and k = 0, and a real k
+     * keeps the mirror
+     */
+    private static Symmetry powerSymmetry(int n, double kr, double ki) {
+        if (ki != 0) {
+            return Symmetry.NONE;
+        }
+        if (kr != 0 || n == 0) {
+            return Symmetry.mirror();
+        }
+        //Z + C commutes with every rotation
+        return Symmetry.dihedral(n == 1 ? 4 : Math.abs(n - 1));
+    }
+
+    /**
+     * @param n Any integer exponent, including negative ones
+     * @param k Constant to add on every iteration
+     * @return exp(Z^n) + k
+     */
+    public static PrimitiveUpdater expPower(int n, Complex k){
+        double kr = k.getReal(), ki = k.getImaginary();
+        return new PrimitiveUpdater() {
+            @Override
+            public void update(double[] z, double re, double im) {
+                pow(z, n);
+                exp(z);
+                z[0] += kr;
+                z[1] += ki;
+            }
+
+            @Override
+            public Symmetry symmetry() {
+                return ki == 0 ? Symmetry.mirror() : Symmetry.NONE;
+            }
+        };
+    }
+
+    /**
+     * Wraps a primitive updater so it can be used where a Complex one is needed.
+     * @param p The primitive updater
+     * @return An equivalent Updater
+     */
+    public static Updater boxed(PrimitiveUpdater p){
+        return (c, o) -> {
+            double[] z = {c.getReal(), c.getImaginary()};
+            p.update(z, o.getReal(), o.getImaginary());
+            return new Complex(z[0], z[1]);
+        };
+    }
+
+    /**
+     * Raises z to an integer power in place by repeated squaring.
+     */
+    static void pow(double[] z, int n){
+        double br = z[0], bi = z[1];
+        double rr = 1.0, ri = 0.0;
+        for (int e = Math.abs(n); e > 0; e >>= 1) {
+            if ((e & 1) != 0) {
+                double t = rr * br - ri * bi;
+                ri = rr * bi + ri * br;
+                rr = t;
+            }
+            double t = br * br - bi * bi;
+            bi = 2.0 * br * bi;
+            br = t;
+        }
+        if (n < 0) {
+            double d = rr * rr + ri * ri;
+            rr = rr / d;
+            ri = -ri / d;
+        }
+        z[0] = rr;
+        z[1] = ri;
+    }
+
+    /**
+     * Complex exponential in place.
+     */
+    static void exp(double[] z){
+        double e = Math.exp(z[0]);
+        double im = z[1];
+        z[0] = e * Math.cos(im);
+        z[1] = e * Math.sin(im);
+    }
+}
@@ -0,0 +1,34 @@
+package fractal;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Encodes a sequence of frames into one stream. See VideoSinks for the
+ * built-in formats.
+ * @author Shubham
+ */
+public interface VideoSink extends Closeable {
+
+    /**
+     * Called once before the first frame. Movie passes its nFrames.
+     * @param frames The number of frames that will be written
+     * @throws IOException If the stream cannot be written
+     */
+    default void start(int frames) throws IOException {
+    }
+
+    /**
+     * Appends the next frame. Every frame must have the size of the first.
+     * @param fb The frame to encode; may be reused once this returns
+     * @throws IOException If the stream cannot be written
+     */
+    void frame(Framebuffer fb) throws IOException;
+
+    /**
+     * Finishes the stream and closes the channel it writes to.
+     * @throws IOException If the stream cannot be written
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,194 @@
+package fractal;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.zip.Deflater;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Common video formats, and channels to write them to. Each sink reuses one
+ * large direct buffer for every frame.
+ * @author Shubham
+ */
+public final class VideoSinks {
+
+    private VideoSinks(){}
+
+    /**
+     * @return A channel to the file, truncating it
+     * @throws IOException If the file cannot be opened
+     */
+    public static WritableByteChannel file(String name) throws IOException {
+        return FileChannel.open(Paths.get(name), CREATE, WRITE, TRUNCATE_EXISTING);
+    }
+
+    /**
+     * @return A channel straight to the standard output file descriptor,
+     * for piping into an encoder like ffmpeg. Writes skip System.out, which
+     * flushes after every write, and closing the channel leaves standard
+     * output open.
+     */
+    public static WritableByteChannel stdout(){
+        System.out.flush();
+        return Channels.newChannel(new FilterOutputStream(new FileOutputStream(FileDescriptor.out)) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        });
+    }
+
+    /**
+     * @param fps Frames per second to record in the header
+     * @return YUV4MPEG2 with 4:4:4 BT.601 studio-range chroma, which ffmpeg
+     * and most players read directly
+     */
+    public static VideoSink y4m(WritableByteChannel out, int fps){
+        return new VideoSink() {
+            private final ByteBuffer buf = ByteBuffer.allocateDirect(ImageSinks.BUFFER_SIZE);
+            private byte[] y, u, v; //Planes of one frame, allocated on the first
+
+            @Override
+            public void frame(Framebuffer fb) throws IOException {
+                int size = fb.width() * fb.height();
+                if (y == null) {
+                    buf.put(("YUV4MPEG2 W" + fb.width() + " H" + fb.height() + " F" + fps
+                            + ":1 Ip A1:1 C444\n").getBytes(StandardCharsets.US_ASCII));
+                    y = new byte[size];
+                    u = new byte[size];
+                    v = new byte[size];
+                }
+                for (int i = 0; i < size; ++i) {
+                    int rgb = fb.get(i);
+                    int r = Rgb.red(rgb), g = Rgb.green(rgb), b = Rgb.blue(rgb);
+                    y[i] = (byte) (((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+                    u[i] = (byte) (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+                    v[i] = (byte) (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+                }
+                buf.put("FRAME\n".getBytes(StandardCharsets.US_ASCII));
+                put(y);
+                put(u);
+                put(v);
+                ImageSinks.drain(buf, out);
+            }
+
+            private void put(byte[] plane) throws IOException {
+                for (int off = 0; off < plane.length; ) {
+                    if (!buf.hasRemaining()) {
+                        ImageSinks.drain(buf, out);
+                    }
+                    int n = Math.min(plane.length - off, buf.remaining());
+                    buf.put(plane, off, n);
+                    off += n;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        };
+    }
+
+    /**
+     * @return Headerless 8-bit RGB triples, frame after frame, e.g. for
+     * ffmpeg -f rawvideo -pix_fmt rgb24
+     */
+    public static VideoSink rgb(WritableByteChannel out){
+        return new VideoSink() {
+            private final ByteBuffer buf = ByteBuffer.allocateDirect(ImageSinks.BUFFER_SIZE);
+
+            @Override
+            public void frame(Framebuffer fb) throws IOException {
+                ImageSinks.writeRgb(fb, out, buf);
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        };
+    }
+
+    /**
+     * APNG records the number of frames up front, so it is taken from
+     * start; Movie passes its nFrames.
+     * @param fps Frames per second
+     * @return Animated PNG, looping forever, at the default deflate level
+     */
+    public static VideoSink apng(WritableByteChannel out, int fps){
+        return new VideoSink() {
+            private final ByteBuffer buf = ByteBuffer.allocateDirect(ImageSinks.BUFFER_SIZE);
+            private final Deflater def = new Deflater(6);
+            private int sequence = 0; //Numbers fcTL and fdAT chunks together
+            private int frames = -1;
+
+            @Override
+            public void start(int n) {
+                frames = n;
+            }
+
+            @Override
+            public void frame(Framebuffer fb) throws IOException {
+                if (frames < 0) {
+                    throw new IllegalStateException("APNG needs start before the first frame");
+                }
+                boolean first = sequence == 0;
+                if (first) {
+                    buf.put(PngSink.SIGNATURE);
+                    PngSink.writeChunk(buf, out, "IHDR", PngSink.header(fb), 0, 13);
+                    byte[] actl = ByteBuffer.allocate(8).putInt(frames).putInt(0).array();
+                    PngSink.writeChunk(buf, out, "acTL", actl, 0, 8);
+                }
+                byte[] fctl = ByteBuffer.allocate(26)
+                        .putInt(sequence++)
+                        .putInt(fb.width())
+                        .putInt(fb.height())
+                        .putInt(0)  //x offset
+                        .putInt(0)  //y offset
+                        .putShort((short) 1)  //delay numerator
+                        .putShort((short) fps)  //delay denominator
+                        .put((byte) 0)  //dispose: none
+                        .put((byte) 0)  //blend: source
+                        .array();
+                PngSink.writeChunk(buf, out, "fcTL", fctl, 0, 26);
+                def.reset();
+                if (first) {
+                    PngSink.deflate(fb, def, (d, off, len) ->
+                            PngSink.writeChunk(buf, out, "IDAT", d, off, len));
+                } else {
+                    PngSink.deflate(fb, def, (d, off, len) -> {
+                        byte[] fdat = ByteBuffer.allocate(4 + len).putInt(sequence++)
+                                .put(d, off, len).array();
+                        PngSink.writeChunk(buf, out, "fdAT", fdat, 0, fdat.length);
+                    });
+                }
+                ImageSinks.drain(buf, out);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    PngSink.writeChunk(buf, out, "IEND", new byte[0], 0, 0);
+                    ImageSinks.drain(buf, out);
+                } finally {
+                    def.end();
+                    out.close();
+                }
+            }
+        };
+    }
+}
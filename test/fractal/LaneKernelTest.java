@@ -0,0 +1,106 @@
+package fractal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks LaneKernel, and the Vector API kernel when create() picks it, bit
+ * for bit against the scalar escape-time loop. To cover the vector kernel,
+ * run with ext's jar on the classpath and --add-modules
+ * jdk.incubator.vector, as ext/build.xml's test target does.
+ * @author Shubham
+ */
+public class LaneKernelTest {
+
+    private static final int DEPTH = 200;
+    private static final double LIM2 = 25.0;
+
+    /**
+     * The loop in Fractal.escape, for Z_0 = C.
+     */
+    private static int scalar(PrimitiveUpdater u, double cr, double ci, double[] z) {
+        z[0] = cr;
+        z[1] = ci;
+        int n = 0;
+        while (z[0] * z[0] + z[1] * z[1] < LIM2) {
+            n++;
+            if (n >= DEPTH) {
+                return n;
+            }
+            u.update(z, cr, ci);
+        }
+        return n;
+    }
+
+    private static void check(LaneKernel k, int degree) {
+        PrimitiveUpdater u = Updaters.power(degree);
+        Random rnd = new Random(degree);
+        double[] z = new double[2];
+        for (int run = 0; run < 2000; run++) {
+            int count = 1 + run % LaneKernel.LANES;
+            for (int l = 0; l < LaneKernel.LANES; l++) {
+                //Lanes past count hold leftovers that must not be touched
+                k.cr[l] = rnd.nextDouble() * 4 - 2;
+                k.ci[l] = rnd.nextDouble() * 4 - 2;
+                k.zr[l] = k.cr[l];
+                k.zi[l] = k.ci[l];
+                k.n[l] = -1;
+            }
+            double[] staleR = k.zr.clone(), staleI = k.zi.clone();
+            k.escape(degree, count, DEPTH, LIM2);
+            for (int l = 0; l < LaneKernel.LANES; l++) {
+                if (l >= count) {
+                    assertEquals(-1, k.n[l]);
+                    assertEquals(staleR[l], k.zr[l], 0.0);
+                    assertEquals(staleI[l], k.zi[l], 0.0);
+                    continue;
+                }
+                int n = scalar(u, k.cr[l], k.ci[l], z);
+                assertEquals("count of lane " + l, n, k.n[l]);
+                assertEquals(Double.doubleToLongBits(z[0]), Double.doubleToLongBits(k.zr[l]));
+                assertEquals(Double.doubleToLongBits(z[1]), Double.doubleToLongBits(k.zi[l]));
+            }
+        }
+    }
+
+    @Test
+    public void scalarLanesMatchScalarLoop() {
+        for (int degree : new int[]{2, 3, 5, 7, 15, 16}) {
+            check(new LaneKernel(), degree);
+        }
+    }
+
+    @Test
+    public void selectedKernelMatchesScalarLoop() {
+        for (int degree : new int[]{2, 3, 5, 7, 15, 16}) {
+            check(LaneKernel.create(), degree);
+        }
+    }
+
+    @Test
+    public void lanesDrawTheSameImage() throws IOException {
+        Path dir = Files.createTempDirectory("lanes");
+        try {
+            for (int degree : new int[]{2, 4}) {
+                Path a = dir.resolve("a" + degree), b = dir.resolve("b" + degree);
+                new Fractal.Builder().width(64).depth(DEPTH).sink(ImageSinks.ppm())
+                        .primitiveUpdate(Updaters.power(degree)).vectorize(true).build()
+                        .draw(a.toString());
+                new Fractal.Builder().width(64).depth(DEPTH).sink(ImageSinks.ppm())
+                        .primitiveUpdate(Updaters.power(degree)).vectorize(false).build()
+                        .draw(b.toString());
+                assertArrayEquals(Files.readAllBytes(dir.resolve("b" + degree + ".ppm")),
+                        Files.readAllBytes(dir.resolve("a" + degree + ".ppm")));
+            }
+        } finally {
+            for (Path p : Files.newDirectoryStream(dir)) {
+                Files.delete(p);
+            }
+            Files.delete(dir);
+        }
+    }
+}
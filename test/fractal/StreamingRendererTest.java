@@ -0,0 +1,92 @@
+package fractal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.math3.complex.Complex;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Interrupts StreamingRenderer part way through and checks that the next
+ * render resumes it, or starts over when the fractal has changed.
+ * @author Shubham
+ */
+public class StreamingRendererTest {
+
+    private static final int WIDTH = 32;
+    private static final int BAND = 8;
+
+    /**
+     * Z^2 + C, counting its calls and throwing once there are more than limit.
+     */
+    private static Fractal fractal(int depth, AtomicLong calls, long limit) {
+        return new Fractal.Builder().width(WIDTH).depth(depth)
+                .update((z, c) -> {
+                    if (calls.incrementAndGet() > limit) {
+                        throw new IllegalStateException("interrupted");
+                    }
+                    return z.multiply(z).add(c);
+                }).build();
+    }
+
+    /**
+     * Renders to name.ppm, returning how many updates it took.
+     */
+    private static long render(Path dir, String name, int depth, long limit) throws IOException {
+        AtomicLong calls = new AtomicLong();
+        new StreamingRenderer(fractal(depth, calls, limit), BAND, true)
+                .render(dir.resolve(name).toString());
+        return calls.get();
+    }
+
+    /**
+     * Renders until the limit throws, leaving the side file behind.
+     */
+    private static void interrupt(Path dir, String name, int depth, long limit) throws IOException {
+        try {
+            render(dir, name, depth, limit);
+            fail("the render was not interrupted");
+        } catch (IllegalStateException expected) {
+        }
+        assertTrue(Files.exists(dir.resolve(name + ".bands")));
+    }
+
+    @Test
+    public void resumesAnInterruptedRender() throws IOException {
+        Path dir = Files.createTempDirectory("streaming");
+        try {
+            long full = render(dir, "fresh", 50, Long.MAX_VALUE);
+            interrupt(dir, "resumed", 50, full / 2);
+            long rest = render(dir, "resumed", 50, Long.MAX_VALUE);
+            assertTrue("resume redid finished bands", rest < full);
+            assertFalse(Files.exists(dir.resolve("resumed.bands")));
+            assertArrayEquals(Files.readAllBytes(dir.resolve("fresh.ppm")),
+                    Files.readAllBytes(dir.resolve("resumed.ppm")));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void startsOverForADifferentFractal() throws IOException {
+        Path dir = Files.createTempDirectory("streaming");
+        try {
+            long full = render(dir, "fresh", 80, Long.MAX_VALUE);
+            interrupt(dir, "changed", 50, full / 4);
+            assertEquals(full, render(dir, "changed", 80, Long.MAX_VALUE));
+            assertArrayEquals(Files.readAllBytes(dir.resolve("fresh.ppm")),
+                    Files.readAllBytes(dir.resolve("changed.ppm")));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        for (Path p : Files.newDirectoryStream(dir)) {
+            Files.delete(p);
+        }
+        Files.delete(dir);
+    }
+}